@@ -24,12 +24,28 @@ package org.jenkinsci.plugins.artifactpromotion;
 
 import hudson.ExtensionList;
 import hudson.model.TaskListener;
+import hudson.remoting.Channel;
+import hudson.remoting.VirtualChannel;
 import hudson.util.Secret;
 import jenkins.model.Jenkins;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.maven.repository.internal.MavenRepositorySystemUtils;
 import org.apache.tools.ant.ExtensionPoint;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.connector.basic.BasicRepositoryConnectorFactory;
+import org.eclipse.aether.impl.DefaultServiceLocator;
+import org.eclipse.aether.transport.file.FileTransporterFactory;
+import org.eclipse.aether.transport.http.HttpTransporterFactory;
+import org.eclipse.aether.util.repository.AuthenticationBuilder;
+import org.jenkinsci.plugins.artifactpromotion.exception.PromotionException;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.WeakHashMap;
 
 /**
  * 
@@ -40,6 +56,20 @@ import java.util.Map;
  */
 public abstract class AbstractPromotor extends ExtensionPoint implements Promotor {
 
+    /**
+     * One class of every jar the closures need on the agent.
+     */
+    private static final Class<?>[] PRELOADED_JARS = { AbstractPromotor.class, RepositorySystem.class,
+            AuthenticationBuilder.class, DefaultServiceLocator.class, BasicRepositoryConnectorFactory.class,
+            FileTransporterFactory.class, HttpTransporterFactory.class, MavenRepositorySystemUtils.class,
+            PoolingHttpClientConnectionManager.class };
+
+    /**
+     * The channels the jars have already been sent to.
+     */
+    private static final Map<VirtualChannel, Boolean> PRELOADED =
+            Collections.synchronizedMap(new WeakHashMap<VirtualChannel, Boolean>());
+
     private TaskListener listener;
     private Map<PromotionBuildTokens, String> expandedTokens;
     private String localRepositoryURL;
@@ -52,6 +82,22 @@ public abstract class AbstractPromotor extends ExtensionPoint implements Promoto
 
     private boolean skipDeletion;
     private boolean debug;
+    private int parallelism;
+    private boolean promoteAttached;
+    private boolean streaming;
+
+    private boolean cleanupLocalRepository;
+
+    private boolean deferDeletion;
+    private boolean resumed;
+
+    private int memoryThreshold;
+
+    private int retries;
+
+    private int priority;
+    private String folder;
+    private String job;
 
     public void setLocalRepositoryURL(String localRepositoryURL) {
         this.localRepositoryURL = localRepositoryURL;
@@ -137,4 +183,206 @@ public abstract class AbstractPromotor extends ExtensionPoint implements Promoto
         this.debug = debug;
     }
 
+    protected int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    protected boolean isPromoteAttached() {
+        return promoteAttached;
+    }
+
+    public void setPromoteAttached(boolean promoteAttached) {
+        this.promoteAttached = promoteAttached;
+    }
+
+    protected boolean isStreaming() {
+        return streaming;
+    }
+
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    /**
+     * @return the request sent with the closure to the agent.
+     */
+    protected PromotionRequest createRequest() {
+        PromotionRequest request = new PromotionRequest(getExpandedTokens(), getLocalRepositoryURL());
+        request.setStaging(getStagingUser(), getStagingPassword());
+        request.setRelease(getReleaseUser(), getReleasePassword());
+        request.setSkipDeletion(isSkipDeletion());
+        request.setDebug(isDebug());
+        request.setParallelism(getParallelism());
+        request.setPromoteAttached(isPromoteAttached());
+        request.setStreaming(isStreaming());
+        request.setCleanupLocalRepository(isCleanupLocalRepository());
+        request.setDeferDeletion(isDeferDeletion());
+        request.setResumed(isResumed());
+        request.setMemoryThreshold(getMemoryThreshold());
+        request.setRetries(getRetries());
+        return request;
+    }
+
+    /**
+     * Creates the closure doing the promotion, which is encapsulated into a
+     * 'closure' to make this plugin run on slaves, too.
+     *
+     * @param request - the request sent with the closure.
+     * @return the closure.
+     */
+    protected abstract IPromotorClosure createClosure(PromotionRequest request);
+
+    /**
+     * Runs the promotion on the channel and waits for it.
+     *
+     * @see org.jenkinsci.plugins.artifactpromotion.Promotor#callPromotor(hudson.remoting.VirtualChannel)
+     */
+    public void callPromotor(VirtualChannel channel) throws PromotionException {
+        start(channel).get();
+    }
+
+    /**
+     * Starts the promotion on the channel without waiting for it, so no
+     * thread is blocked while the artifacts are transferred. The promotion is
+     * queued in the {@link PromotionScheduler} until a slot on the host of
+     * the release repository is free.
+     *
+     * @param channel - the channel of the node the promotion runs on.
+     * @return the running promotion.
+     * @throws PromotionException thrown then the promotion can't be started
+     */
+    public RunningPromotion start(final VirtualChannel channel) throws PromotionException {
+        PromotionRequest request = createRequest();
+        final RemotePromoter promotorTask = new RemotePromoter(createClosure(request));
+        final TaskListener listener = getListener();
+        final boolean debug = isDebug();
+        if (debug) {
+            listener.getLogger().println("Sending promotion request of " + getSerializedSize(request) + " bytes");
+        }
+
+        String releaseRepository = getExpandedTokens().get(PromotionBuildTokens.RELEASE_REPOSITORY);
+        final RunningPromotion promotion = new RunningPromotion(listener, getClass().getSimpleName(),
+                releaseRepository, debug);
+        if (isDeferDeletion()) {
+            promotion.deferDeletions(getExpandedTokens().get(PromotionBuildTokens.STAGING_REPOSITORY),
+                    getStagingUser(), getStagingPassword());
+        }
+        promotion.setSlot(PromotionScheduler.getInstance().schedule(releaseRepository, getPriority(), getFolder(),
+                getJob(), new Runnable() {
+                    public void run() {
+                        preloadJars(channel, listener, debug);
+                        promotion.launch(channel, promotorTask);
+                    }
+                }));
+        return promotion;
+    }
+
+    /**
+     * Sends the jars of the plugin and of aether to an agent with one
+     * request each, instead of loading the classes one by one with the
+     * first promotion. It is done once per channel, the agent keeps the
+     * jars in its jar cache.
+     */
+    private static void preloadJars(VirtualChannel channel, TaskListener listener, boolean debug) {
+        if (!(channel instanceof Channel) || PRELOADED.put(channel, Boolean.TRUE) != null) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            ((Channel) channel).preloadJar(AbstractPromotor.class.getClassLoader(), PRELOADED_JARS);
+            if (debug) {
+                listener.getLogger().println("Preloaded the plugin jars on the agent in "
+                        + (System.currentTimeMillis() - start) + " ms");
+            }
+        } catch (IOException e) {
+            PRELOADED.remove(channel);
+            listener.getLogger().println("Could not preload the plugin jars on the agent: " + e.getMessage());
+        } catch (InterruptedException e) {
+            PRELOADED.remove(channel);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static int getSerializedSize(PromotionRequest request) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(request);
+            out.close();
+        } catch (IOException e) {
+            return -1;
+        }
+        return bytes.size();
+    }
+
+    protected boolean isCleanupLocalRepository() {
+        return cleanupLocalRepository;
+    }
+
+    public void setCleanupLocalRepository(boolean cleanupLocalRepository) {
+        this.cleanupLocalRepository = cleanupLocalRepository;
+    }
+
+    protected boolean isDeferDeletion() {
+        return deferDeletion;
+    }
+
+    public void setDeferDeletion(boolean deferDeletion) {
+        this.deferDeletion = deferDeletion;
+    }
+
+    protected boolean isResumed() {
+        return resumed;
+    }
+
+    public void setResumed(boolean resumed) {
+        this.resumed = resumed;
+    }
+
+    protected int getMemoryThreshold() {
+        return memoryThreshold;
+    }
+
+    public void setMemoryThreshold(int memoryThreshold) {
+        this.memoryThreshold = memoryThreshold;
+    }
+
+    protected int getRetries() {
+        return retries;
+    }
+
+    public void setRetries(int retries) {
+        this.retries = retries;
+    }
+
+    protected int getPriority() {
+        return priority;
+    }
+
+    public void setPriority(int priority) {
+        this.priority = priority;
+    }
+
+    protected String getFolder() {
+        return folder;
+    }
+
+    protected String getJob() {
+        return job;
+    }
+
+    /**
+     * @param folder the full name of the folder of the job, used to share the
+     *            promotion slots fairly between folders.
+     * @param job the full name of the job.
+     */
+    public void setOwner(String folder, String job) {
+        this.folder = folder;
+        this.job = job;
+    }
+
 }
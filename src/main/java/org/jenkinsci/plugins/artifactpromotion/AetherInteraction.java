@@ -24,9 +24,9 @@ package org.jenkinsci.plugins.artifactpromotion;
 
 import hudson.model.TaskListener;
 import hudson.util.Secret;
-import org.apache.commons.io.FileUtils;
 import org.apache.maven.repository.internal.MavenRepositorySystemUtils;
 import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositoryCache;
 import org.eclipse.aether.RepositorySystem;
 import org.eclipse.aether.RepositorySystemSession;
 import org.eclipse.aether.artifact.Artifact;
@@ -41,13 +41,17 @@ import org.eclipse.aether.repository.RemoteRepository;
 import org.eclipse.aether.resolution.ArtifactRequest;
 import org.eclipse.aether.resolution.ArtifactResolutionException;
 import org.eclipse.aether.resolution.ArtifactResult;
+import org.eclipse.aether.util.listener.ChainedTransferListener;
 import org.eclipse.aether.util.repository.AuthenticationBuilder;
+import org.eclipse.aether.util.repository.SimpleResolutionErrorPolicy;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 
@@ -59,13 +63,27 @@ import java.util.Map;
  */
 public class AetherInteraction {
 
-        private final static String TEMP_DIR_PREFIX = "artifactpromotion";
+    /**
+     * Partial downloads of at least this size are kept for a resume.
+     */
+    private static final int RESUME_THRESHOLD = 64 * 1024;
 
     private TaskListener listener;
+
+    private PromotionMetrics metrics;
         
     public AetherInteraction(TaskListener listener) {
+        this(listener, new PromotionMetrics());
+    }
+
+    /**
+     * @param listener
+     * @param metrics the metrics the timings and transferred bytes are added to.
+     */
+    public AetherInteraction(TaskListener listener, PromotionMetrics metrics) {
         super();
         this.listener = listener;
+        this.metrics = metrics;
     }
 
     /**
@@ -82,57 +100,55 @@ public class AetherInteraction {
      */
     protected DeployResult deployArtifact(final RepositorySystemSession session, final RepositorySystem system,
             final RemoteRepository releaseRepo, final Artifact artifact, final Artifact pom) throws DeploymentException {
+        return deployArtifacts(session, system, releaseRepo, Collections.singletonList(artifact), pom);
+    }
+
+    /**
+     * Deploy several artifacts of the same version together with their POM in
+     * one request to a repository server. The POM is only deployed if it
+     * doesn't exist yet in the release repository.
+     * 
+     * @param session
+     * @param system
+     * @param releaseRepo
+     * @param artifacts
+     * @param pom
+     * @return An object of type {@link DeployResult} which contains the request
+     * and links to the involved artifacts
+     * @throws DeploymentException
+     */
+    protected DeployResult deployArtifacts(final RepositorySystemSession session, final RepositorySystem system,
+            final RemoteRepository releaseRepo, final Collection<Artifact> artifacts, final Artifact pom) throws DeploymentException {
         
         DeployRequest deployRequest = new DeployRequest();
-        deployRequest.addArtifact(artifact);
-
-        String tempName = null;
-        File tempDirectory = null;
-
-        try {
-
-            if(artifact.getExtension().equalsIgnoreCase("pom"))
-                this.listener.getLogger().println("Promoting POM artifact");
-            else
-            {
-                this.listener.getLogger().println("Checking if POM already exists in releaserepo");
+        deployRequest.setArtifacts(new ArrayList<Artifact>(artifacts));
 
-                File tempFile = File.createTempFile(TEMP_DIR_PREFIX, null);
-                tempName = tempFile.getCanonicalPath();
-                if (!tempFile.delete()) {
-                    throw new IllegalStateException("Unable to delete temporary directory. Will stop here.");
-                }
-                tempDirectory = new File(tempName);
-                if (!tempDirectory.mkdir()) {
-                    throw new IllegalStateException("Unable to create temporary directory. Will stop here.");
-                }
-
-                DefaultRepositorySystemSession testSession = MavenRepositorySystemUtils.newSession();
-                LocalRepository tempRepo = new LocalRepository(tempDirectory);
-                testSession.setLocalRepositoryManager(system.newLocalRepositoryManager(testSession, tempRepo));
-
-                // Check if POM exists - we don't need the artifact itself, just whether it can be resolved
-                getArtifact(testSession, system, releaseRepo, pom.getGroupId(), pom.getArtifactId(), null,
-                        ArtifactPromotionBuilder.POMTYPE, pom.getVersion());
-            }
-
-        } catch(IOException e) {
-            this.listener.getLogger().println("Cannot create temp file, POM file will be deployed");
-            deployRequest.addArtifact(pom);
-        } catch(ArtifactResolutionException e) {
-            this.listener.getLogger().println("POM doesn't exist in release repo, it will be deployed");
-            deployRequest.addArtifact(pom);
-        } finally {
-            if (tempDirectory != null) {
-                try {
-                    FileUtils.deleteDirectory(tempDirectory);
-                } catch(IOException e) {
-                    this.listener.getLogger().println("Cannot delete temp file: " + tempName);
+        if(artifacts.size() == 1 && artifacts.iterator().next().getExtension().equalsIgnoreCase("pom"))
+            this.listener.getLogger().println("Promoting POM artifact");
+        else
+        {
+            this.listener.getLogger().println("Checking if POM already exists in releaserepo");
+            long start = System.currentTimeMillis();
+            try {
+                if (!RemoteRepositoryAccess.exists(session, releaseRepo, pom)) {
+                    this.listener.getLogger().println("POM doesn't exist in release repo, it will be deployed");
+                    deployRequest.addArtifact(pom);
                 }
+            } catch(IOException e) {
+                this.listener.getLogger().println("Cannot check if POM exists (" + e.getMessage()
+                        + "), POM file will be deployed");
+                deployRequest.addArtifact(pom);
+            } finally {
+                metrics.addPomCheckTime(start);
             }
+        }
 
-            deployRequest.setRepository(releaseRepo);
+        deployRequest.setRepository(releaseRepo);
+        long start = System.currentTimeMillis();
+        try {
             return system.deploy(session, deployRequest);
+        } finally {
+            metrics.addDeployTime(start);
         }
     }
 
@@ -160,21 +176,99 @@ public class AetherInteraction {
         ArtifactRequest artifactRequest = new ArtifactRequest();
         artifactRequest.setArtifact(artifact);      
         artifactRequest.setRepositories(new ArrayList<RemoteRepository>(Arrays.asList(remoteRepo)));
-        ArtifactResult artifactResult = system.resolveArtifact(session, artifactRequest);
+        long start = System.currentTimeMillis();
+        ArtifactResult artifactResult;
+        try {
+            artifactResult = system.resolveArtifact(session, artifactRequest);
+        } finally {
+            metrics.addResolveTime(start);
+        }
         artifact = artifactResult.getArtifact();
         return artifact;
     }
 
+    /** Get ('resolve') several artifacts from a repository server with one
+     * request. The transfers of the artifacts are done concurrently by the
+     * connector, so the time needed is the one of the slowest transfer.
+     * 
+     * @param session
+     * @param system
+     * @param remoteRepo
+     * @param artifacts
+     * @return the resolved artifacts in the order of the given ones
+     * @throws ArtifactResolutionException
+     */
+    protected List<Artifact> getArtifacts(final RepositorySystemSession session, RepositorySystem system,
+            final RemoteRepository remoteRepo, final List<Artifact> artifacts) throws ArtifactResolutionException {
+        long start = System.currentTimeMillis();
+        try {
+            return resolveArtifacts(session, system, remoteRepo, artifacts);
+        } finally {
+            metrics.addResolveTime(start);
+        }
+    }
+
+    private List<Artifact> resolveArtifacts(final RepositorySystemSession session, RepositorySystem system,
+            final RemoteRepository remoteRepo, final List<Artifact> artifacts) throws ArtifactResolutionException {
+        AgentArtifactCache cache = AgentArtifactCache.getInstance();
+        if (cache != null) {
+            cache.prefetch(session, remoteRepo, artifacts, listener.getLogger());
+        }
+        SegmentedDownload segmented = SegmentedDownload.getInstance();
+        if (segmented != null) {
+            segmented.prefetch(session, remoteRepo, artifacts, listener.getLogger());
+        }
+        List<ArtifactRequest> artifactRequests = new ArrayList<ArtifactRequest>(artifacts.size());
+        for (Artifact artifact : artifacts) {
+            ArtifactRequest artifactRequest = new ArtifactRequest();
+            artifactRequest.setArtifact(artifact);
+            artifactRequest.setRepositories(new ArrayList<RemoteRepository>(Arrays.asList(remoteRepo)));
+            artifactRequests.add(artifactRequest);
+        }
+        List<Artifact> resolved = new ArrayList<Artifact>(artifacts.size());
+        for (ArtifactResult artifactResult : system.resolveArtifacts(session, artifactRequests)) {
+            resolved.add(artifactResult.getArtifact());
+        }
+        if (cache != null) {
+            cache.store(resolved, listener.getLogger());
+        }
+        return resolved;
+    }
+
     public RepositorySystem getNewRepositorySystem() {
         return RepositorySystemFactory.getNewRepositorySystem(listener.getLogger());
     }
 
     public DefaultRepositorySystemSession getRepositorySystemSession(final RepositorySystem system, final String localRepoLocation) {
+        return getRepositorySystemSession(system, localRepoLocation, null);
+    }
+
+    /**
+     * Creates a session using a shared repository cache. Sessions with the
+     * same cache reuse the connections to the repository servers.
+     *
+     * @param system
+     * @param localRepoLocation
+     * @param cache the repository cache, e.g. from {@link AgentSessionCache}, or null.
+     * @return the new session
+     */
+    public DefaultRepositorySystemSession getRepositorySystemSession(final RepositorySystem system,
+            final String localRepoLocation, final RepositoryCache cache) {
 
         DefaultRepositorySystemSession session = MavenRepositorySystemUtils.newSession();
         LocalRepository localRepo = new LocalRepository(localRepoLocation);
         session.setLocalRepositoryManager(system.newLocalRepositoryManager(session, localRepo));
-        session.setTransferListener(new JenkinsConsoleTransferListener(listener.getLogger()));
+        PrintStream progress = listener instanceof AsyncConsole ? ((AsyncConsole) listener).getProgress()
+                : listener.getLogger();
+        session.setTransferListener(ChainedTransferListener.newInstance(
+                new JenkinsConsoleTransferListener(listener.getLogger(), progress), metrics.newTransferListener()));
+        session.setCache(cache);
+        // keep partial downloads, a retry continues them with a range request
+        session.setConfigProperty("aether.connector.resumeDownloads", Boolean.TRUE);
+        session.setConfigProperty("aether.connector.resumeThreshold", RESUME_THRESHOLD);
+        // a retry has to contact the repository again instead of failing with the cached error
+        session.setConfigProperty("aether.updateCheckManager.sessionState", "bypass");
+        session.setResolutionErrorPolicy(new SimpleResolutionErrorPolicy(false, false));
         return session;
     }
 
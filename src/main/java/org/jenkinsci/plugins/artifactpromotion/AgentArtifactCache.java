@@ -0,0 +1,477 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Halil-Cem Guersoy and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.artifactpromotion;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.repository.LocalArtifactRegistration;
+import org.eclipse.aether.repository.LocalRepositoryManager;
+import org.eclipse.aether.repository.RemoteRepository;
+
+/**
+ * A cache of artifacts shared by all jobs running on the same agent. The
+ * files are stored by their SHA-1 checksum, so the same content is only kept
+ * once. Before an artifact is downloaded from the staging repository, its
+ * checksum is fetched and a cached file is hard linked into the local
+ * repository of the workspace, which saves the download.
+ * <p>
+ * The cache is disabled by default. It is enabled by setting the system
+ * property <code>org.jenkinsci.plugins.artifactpromotion.AgentArtifactCache.directory</code>
+ * of the agent JVM. The size is limited by <code>...maxSize</code> (MB, default
+ * 10240), the least recently used files are evicted first. Concurrent builds
+ * on the agent are synchronized by a lock file.
+ * <p>
+ * The SHA-1 checksum of a file in a local repository is kept in an index
+ * together with the size and modification time of the file, so an unchanged
+ * file is never hashed twice. The index lives in memory and in the
+ * <code>.index</code> directory of the cache, nothing is written into the
+ * local repositories. The index also records when a cached file was used
+ * last, the files themselves are shared with the workspaces by hard links
+ * and keep their modification time.
+ */
+public final class AgentArtifactCache {
+
+    private static final String PREFIX = AgentArtifactCache.class.getName() + ".";
+
+    private static final String LOCK_FILE = ".lock";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String INDEX = ".index";
+
+    private static final String DIGESTS = "digests";
+
+    private static final String ACCESS = "access";
+
+    /**
+     * The number of digests kept in the index before it is started over.
+     */
+    private static final int MAX_INDEX_SIZE = 10000;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final AgentArtifactCache INSTANCE = create();
+
+    private final File directory;
+
+    private final long maxSize;
+
+    /**
+     * The digests of the files in local repositories by their absolute path.
+     */
+    private final ConcurrentMap<String, Digest> index = new ConcurrentHashMap<String, Digest>();
+
+    AgentArtifactCache(File directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    private static AgentArtifactCache create() {
+        String directory = System.getProperty(PREFIX + "directory");
+        if (directory == null || directory.trim().length() == 0) {
+            return null;
+        }
+        long maxSize = Long.getLong(PREFIX + "maxSize", 10240) * 1024 * 1024;
+        return new AgentArtifactCache(new File(directory.trim()), maxSize);
+    }
+
+    /**
+     * @return the cache of this agent or null if the cache is disabled.
+     */
+    public static AgentArtifactCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Links the cached files of the artifacts into the local repository of
+     * the session and registers them there, so aether doesn't download them.
+     *
+     * @return the number of artifacts found in the cache.
+     */
+    public int prefetch(RepositorySystemSession session, RemoteRepository remoteRepo, List<Artifact> artifacts,
+            PrintStream logger) {
+        LocalRepositoryManager manager = session.getLocalRepositoryManager();
+        int hits = 0;
+        for (Artifact artifact : artifacts) {
+            File target = new File(manager.getRepository().getBasedir(), manager.getPathForLocalArtifact(artifact));
+            if (target.isFile()) {
+                continue;
+            }
+            try {
+                String sha1 = RemoteRepositoryAccess.getChecksum(session, remoteRepo, artifact, "sha1");
+                File cached = sha1 == null ? null : getFile(sha1.toLowerCase());
+                if (cached == null || !cached.isFile()) {
+                    continue;
+                }
+                link(cached, target);
+                LocalRepositoryCleaner.track(session, target);
+                if (!touch(sha1.toLowerCase())) {
+                    logger.println("Cannot update the access time of " + cached);
+                }
+                remember(target, sha1.toLowerCase());
+                manager.add(session, new LocalArtifactRegistration(artifact, remoteRepo,
+                        Collections.singleton("")));
+                logger.println("Using cached " + artifact + " (" + sha1 + ")");
+                hits++;
+            } catch (IOException e) {
+                logger.println("Cannot use the artifact cache for " + artifact + ": " + e.getMessage());
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Adds the files of resolved artifacts to the cache and evicts the least
+     * recently used files if the cache has grown too large.
+     */
+    public void store(List<Artifact> artifacts, PrintStream logger) {
+        boolean added = false;
+        for (Artifact artifact : artifacts) {
+            File file = artifact.getFile();
+            if (file == null || !file.isFile()) {
+                continue;
+            }
+            try {
+                String sha1 = digest(file);
+                File cached = getFile(sha1);
+                if (cached.isFile()) {
+                    touch(sha1);
+                    continue;
+                }
+                File parent = cached.getParentFile();
+                if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+                    throw new IOException("Unable to create directory " + parent);
+                }
+                File temp = new File(parent, cached.getName() + "." + Thread.currentThread().getId() + ".tmp");
+                link(file, temp);
+                Files.move(temp.toPath(), cached.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+                touch(sha1);
+                added = true;
+            } catch (IOException e) {
+                logger.println("Cannot add " + artifact + " to the artifact cache: " + e.getMessage());
+            }
+        }
+        if (added) {
+            try {
+                evict(logger);
+            } catch (IOException e) {
+                logger.println("Cannot evict files from the artifact cache: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Returns the SHA-1 checksum of a file in a local repository. It is only
+     * computed if the index doesn't know it for the current size and
+     * modification time of the file.
+     */
+    String digest(File file) throws IOException {
+        long size = file.length();
+        long modified = file.lastModified();
+        Digest known = index.get(file.getAbsolutePath());
+        if (known == null || !known.matches(size, modified)) {
+            known = readDigest(getDigestFile(file));
+        }
+        String sha1;
+        if (known != null && known.matches(size, modified)) {
+            sha1 = known.sha1;
+        } else {
+            sha1 = sha1(file);
+            writeDigest(getDigestFile(file), new Digest(size, modified, sha1), file);
+        }
+        remember(file, sha1);
+        return sha1;
+    }
+
+    private void remember(File file, String sha1) {
+        if (index.size() >= MAX_INDEX_SIZE) {
+            index.clear();
+        }
+        index.put(file.getAbsolutePath(), new Digest(file.length(), file.lastModified(), sha1));
+    }
+
+    /**
+     * @return the file of the index holding the digest of a file in a local
+     *         repository, named by the SHA-1 checksum of its absolute path.
+     */
+    File getDigestFile(File file) {
+        MessageDigest digest = newSha1();
+        String key = RemoteRepositoryAccess.toHex(digest.digest(file.getAbsolutePath().getBytes(UTF8)));
+        return new File(new File(new File(directory, INDEX), DIGESTS), key);
+    }
+
+    /**
+     * @return the digest or null if the file doesn't exist or isn't valid.
+     */
+    private static Digest readDigest(File digestFile) {
+        if (!digestFile.isFile()) {
+            return null;
+        }
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(digestFile),
+                    UTF8));
+            try {
+                String line = reader.readLine();
+                String[] fields = line == null ? new String[0] : line.split(" ", 4);
+                if (fields.length < 3 || !fields[2].matches("[0-9a-f]{40}")) {
+                    return null;
+                }
+                return new Digest(Long.parseLong(fields[0]), Long.parseLong(fields[1]), fields[2]);
+            } finally {
+                reader.close();
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes the size, the modification time, the checksum and the path of
+     * the file, the path is used to remove outdated digests.
+     */
+    private static void writeDigest(File digestFile, Digest digest, File file) {
+        try {
+            File parent = digestFile.getParentFile();
+            if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+                return;
+            }
+            OutputStream out = new FileOutputStream(digestFile);
+            try {
+                out.write((digest.size + " " + digest.modified + " " + digest.sha1 + " " + file.getAbsolutePath())
+                        .getBytes(UTF8));
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            // the checksum is computed again next time
+        }
+    }
+
+    /**
+     * Records the use of a cached file for the eviction.
+     *
+     * @return false if the time couldn't be recorded.
+     */
+    private boolean touch(String sha1) {
+        File access = getAccessFile(sha1);
+        try {
+            File parent = access.getParentFile();
+            if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+                return false;
+            }
+            return access.createNewFile() || access.setLastModified(System.currentTimeMillis());
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the time a cached file was used last, the time it was added if
+     *         the index doesn't know.
+     */
+    private long getLastUsed(File cached) {
+        long accessed = getAccessFile(cached.getName()).lastModified();
+        return accessed > 0 ? accessed : cached.lastModified();
+    }
+
+    private File getAccessFile(String sha1) {
+        return new File(new File(new File(directory, INDEX), ACCESS), sha1);
+    }
+
+    private File getFile(String sha1) {
+        return new File(new File(directory, sha1.substring(0, 2)), sha1);
+    }
+
+    /**
+     * Removes the least recently used files until the cache fits into its
+     * size limit. Files linked into workspaces stay valid.
+     */
+    private void evict(PrintStream logger) throws IOException {
+        // file locks are held by the JVM, so builds in the same JVM have to be serialized, too
+        synchronized (AgentArtifactCache.class) {
+            RandomAccessFile lockFile = new RandomAccessFile(new File(directory, LOCK_FILE), "rw");
+            try {
+                FileChannel channel = lockFile.getChannel();
+                FileLock lock = channel.lock();
+                try {
+                    removeOutdatedDigests();
+                    List<File> files = new ArrayList<File>();
+                    final Map<File, Long> lastUsed = new HashMap<File, Long>();
+                    long size = 0;
+                    File[] dirs = directory.listFiles();
+                    for (File dir : dirs == null ? new File[0] : dirs) {
+                        File[] entries = dir.isDirectory() && !dir.getName().startsWith(".") ? dir.listFiles()
+                                : null;
+                        for (File entry : entries == null ? new File[0] : entries) {
+                            if (entry.isFile() && !entry.getName().endsWith(".tmp")) {
+                                files.add(entry);
+                                lastUsed.put(entry, getLastUsed(entry));
+                                size += entry.length();
+                            }
+                        }
+                    }
+                    if (size <= maxSize) {
+                        return;
+                    }
+                    Collections.sort(files, new Comparator<File>() {
+                        public int compare(File f1, File f2) {
+                            return Long.compare(lastUsed.get(f1), lastUsed.get(f2));
+                        }
+                    });
+                    for (File file : files) {
+                        if (size <= maxSize) {
+                            break;
+                        }
+                        long length = file.length();
+                        if (file.delete()) {
+                            getAccessFile(file.getName()).delete();
+                            size -= length;
+                            logger.println("Evicted " + file.getName() + " from the artifact cache");
+                        }
+                    }
+                } finally {
+                    lock.release();
+                }
+            } finally {
+                lockFile.close();
+            }
+        }
+    }
+
+    /**
+     * Removes the digests of files which were deleted or changed since, e.g.
+     * with the workspace.
+     */
+    private void removeOutdatedDigests() {
+        File[] digestFiles = new File(new File(directory, INDEX), DIGESTS).listFiles();
+        for (File digestFile : digestFiles == null ? new File[0] : digestFiles) {
+            Digest digest = readDigest(digestFile);
+            File file = digest == null ? null : readPath(digestFile);
+            if (file == null || !digest.matches(file.length(), file.lastModified())) {
+                digestFile.delete();
+            }
+        }
+    }
+
+    private static File readPath(File digestFile) {
+        try {
+            String[] fields = new String(Files.readAllBytes(digestFile.toPath()), UTF8).split(" ", 4);
+            return fields.length == 4 ? new File(fields[3]) : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Creates a hard link, or a copy if the file system doesn't support links
+     * between both locations.
+     */
+    private static void link(File source, File target) throws IOException {
+        File parent = target.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+            throw new IOException("Unable to create directory " + parent);
+        }
+        try {
+            Files.createLink(target.toPath(), source.toPath());
+        } catch (FileAlreadyExistsException e) {
+            // another build was faster
+        } catch (UnsupportedOperationException e) {
+            Files.copy(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Files.copy(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static MessageDigest newSha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("The algorithm SHA-1 is not supported on your platform.", e);
+        }
+    }
+
+    private static String sha1(File file) throws IOException {
+        MessageDigest digest = newSha1();
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        return RemoteRepositoryAccess.toHex(digest.digest());
+    }
+
+    private static final class Digest {
+
+        private final long size;
+
+        private final long modified;
+
+        private final String sha1;
+
+        Digest(long size, long modified, String sha1) {
+            this.size = size;
+            this.modified = modified;
+            this.sha1 = sha1;
+        }
+
+        boolean matches(long size, long modified) {
+            return this.size == size && this.modified == modified;
+        }
+    }
+
+}
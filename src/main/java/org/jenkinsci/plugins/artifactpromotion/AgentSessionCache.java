@@ -0,0 +1,259 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Halil-Cem Guersoy and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.artifactpromotion;
+
+import hudson.remoting.Channel;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.aether.RepositoryCache;
+import org.eclipse.aether.RepositorySystemSession;
+
+/**
+ * Keeps the aether repository caches of recent promotions in the JVM of the
+ * agent. The HTTP transport of aether keeps its connection pools and the
+ * negotiated authentication in the repository cache of the session, so
+ * sessions sharing a cache reuse warm connections to the repository servers.
+ * <p>
+ * The caches are keyed by the repository URLs and credentials. A cache which
+ * hasn't been used for the idle timeout (system property
+ * <code>org.jenkinsci.plugins.artifactpromotion.AgentSessionCache.idleTimeout</code>,
+ * minutes) is dropped and the connection pools kept in it are shut down. All
+ * caches are dropped when the agent loses the connection to the master.
+ */
+public final class AgentSessionCache {
+
+    private static final Logger LOGGER = Logger.getLogger(AgentSessionCache.class.getName());
+
+    private static final long IDLE_TIMEOUT = TimeUnit.MINUTES.toMillis(
+            Long.getLong(AgentSessionCache.class.getName() + ".idleTimeout", 10));
+
+    private static final ConcurrentMap<String, Entry> CACHES = new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * The channels to the master which are watched for a disconnect.
+     */
+    private static final Set<Channel> WATCHED = Collections.synchronizedSet(
+            Collections.newSetFromMap(new WeakHashMap<Channel, Boolean>()));
+
+    private AgentSessionCache() {
+    }
+
+    /**
+     * Returns the repository cache for a key, a new one is created if there
+     * is none yet. The lookup doesn't lock. The cache is in use until it is
+     * given back with {@link #release(RepositoryCache)}, it isn't evicted
+     * before.
+     *
+     * @param key the key, see {@link #getKey(String...)}
+     * @return the repository cache to be set on the session.
+     */
+    public static RepositoryCache acquire(String key) {
+        long now = System.currentTimeMillis();
+        evictIdle(now);
+        watchChannel();
+        while (true) {
+            Entry entry = CACHES.get(key);
+            if (entry == null) {
+                Entry created = new Entry();
+                entry = CACHES.putIfAbsent(key, created);
+                if (entry == null) {
+                    entry = created;
+                }
+            }
+            if (entry.acquire()) {
+                entry.lastUsed = now;
+                return entry;
+            }
+            // evicted in the meantime
+            CACHES.remove(key, entry);
+        }
+    }
+
+    /**
+     * Gives back a cache returned by {@link #acquire(String)}.
+     */
+    public static void release(RepositoryCache cache) {
+        Entry entry = (Entry) cache;
+        entry.lastUsed = System.currentTimeMillis();
+        if (entry.users.decrementAndGet() == 0 && entry.retired) {
+            entry.close();
+        }
+    }
+
+    /**
+     * Builds a cache key out of the repository URLs and credentials. Passwords
+     * should be given as hash only, see {@link #hashCredentials(String, String)}.
+     */
+    public static String getKey(String... parts) {
+        StringBuilder key = new StringBuilder();
+        for (String part : parts) {
+            key.append(part).append('\n');
+        }
+        return key.toString();
+    }
+
+    /**
+     * @return the SHA-256 checksum of the user and the password, so the key
+     *         neither contains the password nor matches other credentials.
+     */
+    public static String hashCredentials(String user, String password) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("The algorithm SHA-256 is not supported on your platform.", e);
+        }
+        String credentials = (user == null ? "" : user) + ":" + (password == null ? "" : password);
+        return RemoteRepositoryAccess.toHex(digest.digest(credentials.getBytes(Charset.forName("UTF-8"))));
+    }
+
+    /**
+     * @return the number of cached sessions.
+     */
+    public static int size() {
+        return CACHES.size();
+    }
+
+    /**
+     * Drops all caches. Unused caches are closed at once, the others when
+     * they are released.
+     */
+    public static void clear() {
+        for (Map.Entry<String, Entry> entry : CACHES.entrySet()) {
+            if (CACHES.remove(entry.getKey(), entry.getValue())) {
+                entry.getValue().retired = true;
+                entry.getValue().close();
+            }
+        }
+    }
+
+    private static void evictIdle(long now) {
+        for (Map.Entry<String, Entry> entry : CACHES.entrySet()) {
+            if (now - entry.getValue().lastUsed > IDLE_TIMEOUT && entry.getValue().close()) {
+                CACHES.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Drops the caches and closes the idle pooled connections once the
+     * channel of the current call to the agent is closed.
+     */
+    private static void watchChannel() {
+        Channel channel = Channel.current();
+        if (channel != null && WATCHED.add(channel)) {
+            channel.addListener(new Channel.Listener() {
+                @Override
+                public void onClosed(Channel channel, IOException cause) {
+                    LOGGER.log(Level.FINE, "Channel {0} closed, dropping {1} repository caches",
+                            new Object[] {channel, CACHES.size()});
+                    clear();
+                    PooledHttpClient.closeIdleConnections();
+                }
+            });
+        }
+    }
+
+    /**
+     * A repository cache which closes the closeable values put into it, e.g.
+     * the connection pools of the aether HTTP transport.
+     */
+    private static final class Entry implements RepositoryCache {
+
+        private final ConcurrentMap<Object, Object> data = new ConcurrentHashMap<Object, Object>();
+
+        /**
+         * The number of promotions using the cache, -1 once it is closed.
+         */
+        private final AtomicInteger users = new AtomicInteger();
+
+        private volatile long lastUsed;
+
+        /**
+         * Set when the cache has been dropped while it was in use.
+         */
+        private volatile boolean retired;
+
+        public void put(RepositorySystemSession session, Object key, Object value) {
+            if (value == null) {
+                data.remove(key);
+            } else {
+                data.put(key, value);
+            }
+        }
+
+        public Object get(RepositorySystemSession session, Object key) {
+            return data.get(key);
+        }
+
+        private boolean acquire() {
+            while (true) {
+                int count = users.get();
+                if (count < 0) {
+                    return false;
+                }
+                if (users.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Closes the cache if nobody uses it.
+         *
+         * @return true if the cache has been closed.
+         */
+        private boolean close() {
+            if (!users.compareAndSet(0, -1)) {
+                return false;
+            }
+            for (Object value : data.values()) {
+                if (value instanceof Closeable) {
+                    try {
+                        ((Closeable) value).close();
+                    } catch (IOException e) {
+                        LOGGER.log(Level.FINE, "Could not close " + value, e);
+                    }
+                }
+            }
+            data.clear();
+            return true;
+        }
+    }
+
+}
@@ -38,6 +38,7 @@ import jenkins.tasks.SimpleBuildStep;
 import net.sf.json.JSONObject;
 import org.jenkinsci.plugins.artifactpromotion.exception.PromotionException;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.StaplerRequest2;
 
 import javax.annotation.Nonnull;
@@ -127,6 +128,17 @@ public class ArtifactPromotionBuilder extends Builder implements SimpleBuildStep
     public static final class ArtifactPromotionDescriptorImpl extends
             BuildStepDescriptor<Builder> implements FormValidator {
 
+        /**
+         * The maximum number of promotions running at the same time against
+         * one repository host, 0 for no limit.
+         */
+        private int maxConcurrentPromotions;
+
+        /**
+         * Limits of single hosts, one <code>host[:port]=limit</code> per line.
+         */
+        private String hostLimits;
+
         /**
          * In order to load the persisted global configuration, you have to call
          * load() in the constructor.
@@ -151,16 +163,59 @@ public class ArtifactPromotionBuilder extends Builder implements SimpleBuildStep
         @Override
         public boolean configure(StaplerRequest2 req, JSONObject formData)
                 throws FormException {
-            // To persist global configuration information,
-            // set that to properties and call save().
-            // useFrench = formData.getBoolean("useFrench");
-            // ^Can also use req.bindJSON(this, formData);
-            // (easier when there are many fields; need set* methods for this,
-            // like setUseFrench)
-            // save();
+            req.bindJSON(this, formData);
+            save();
             return super.configure(req, formData);
         }
 
+        public int getMaxConcurrentPromotions() {
+            return maxConcurrentPromotions;
+        }
+
+        public void setMaxConcurrentPromotions(int maxConcurrentPromotions) {
+            this.maxConcurrentPromotions = maxConcurrentPromotions;
+        }
+
+        public String getHostLimits() {
+            return hostLimits;
+        }
+
+        public void setHostLimits(String hostLimits) {
+            this.hostLimits = hostLimits;
+        }
+
+        /**
+         * @param host the host, with the port if the URL contains one.
+         * @return the maximum number of concurrent promotions against the host, 0 for no limit.
+         */
+        public int getLimit(String host) {
+            if (hostLimits != null) {
+                String hostOnly = host.indexOf(':') < 0 ? host : host.substring(0, host.indexOf(':'));
+                Integer hostOnlyLimit = null;
+                for (String line : hostLimits.split("[\\r\\n]+")) {
+                    int separator = line.lastIndexOf('=');
+                    if (separator < 0) {
+                        continue;
+                    }
+                    String name = line.substring(0, separator).trim();
+                    try {
+                        int limit = Integer.parseInt(line.substring(separator + 1).trim());
+                        if (name.equalsIgnoreCase(host)) {
+                            return limit;
+                        } else if (name.equalsIgnoreCase(hostOnly)) {
+                            hostOnlyLimit = limit;
+                        }
+                    } catch (NumberFormatException e) {
+                        // ignore the malformed line
+                    }
+                }
+                if (hostOnlyLimit != null) {
+                    return hostOnlyLimit;
+                }
+            }
+            return maxConcurrentPromotions;
+        }
+
     }
 
     public String getGroupId() {
@@ -215,6 +270,87 @@ public class ArtifactPromotionBuilder extends Builder implements SimpleBuildStep
         return artifactPromotionHelper.skipDeletion;
     }
 
+    @DataBoundSetter
+    public void setArtifacts(String artifacts) {
+        artifactPromotionHelper.artifacts = artifacts;
+    }
+
+    public String getArtifacts() {
+        return artifactPromotionHelper.artifacts;
+    }
+
+    @DataBoundSetter
+    public void setParallelism(int parallelism) {
+        artifactPromotionHelper.parallelism = parallelism;
+    }
+
+    public int getParallelism() {
+        return artifactPromotionHelper.parallelism;
+    }
+
+    @DataBoundSetter
+    public void setPromoteAttached(boolean promoteAttached) {
+        artifactPromotionHelper.promoteAttached = promoteAttached;
+    }
+
+    public boolean isPromoteAttached() {
+        return artifactPromotionHelper.promoteAttached;
+    }
+
+    @DataBoundSetter
+    public void setStreaming(boolean streaming) {
+        artifactPromotionHelper.streaming = streaming;
+    }
+
+    public boolean isStreaming() {
+        return artifactPromotionHelper.streaming;
+    }
+
+    @DataBoundSetter
+    public void setCleanupLocalRepository(boolean cleanupLocalRepository) {
+        artifactPromotionHelper.cleanupLocalRepository = cleanupLocalRepository;
+    }
+
+    public boolean isCleanupLocalRepository() {
+        return artifactPromotionHelper.cleanupLocalRepository;
+    }
+
+    @DataBoundSetter
+    public void setDeferDeletion(boolean deferDeletion) {
+        artifactPromotionHelper.deferDeletion = deferDeletion;
+    }
+
+    public boolean isDeferDeletion() {
+        return artifactPromotionHelper.deferDeletion;
+    }
+
+    @DataBoundSetter
+    public void setMemoryThreshold(int memoryThreshold) {
+        artifactPromotionHelper.memoryThreshold = memoryThreshold;
+    }
+
+    public int getMemoryThreshold() {
+        return artifactPromotionHelper.memoryThreshold;
+    }
+
+    @DataBoundSetter
+    public void setRetries(int retries) {
+        artifactPromotionHelper.retries = retries;
+    }
+
+    public int getRetries() {
+        return artifactPromotionHelper.retries;
+    }
+
+    @DataBoundSetter
+    public void setPriority(int priority) {
+        artifactPromotionHelper.priority = priority;
+    }
+
+    public int getPriority() {
+        return artifactPromotionHelper.priority;
+    }
+
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder();
@@ -244,6 +380,24 @@ public class ArtifactPromotionBuilder extends Builder implements SimpleBuildStep
         builder.append(artifactPromotionHelper.debug);
         builder.append(", skipDeletion=");
         builder.append(artifactPromotionHelper.skipDeletion);
+        builder.append(", artifacts=");
+        builder.append(artifactPromotionHelper.artifacts);
+        builder.append(", parallelism=");
+        builder.append(artifactPromotionHelper.parallelism);
+        builder.append(", promoteAttached=");
+        builder.append(artifactPromotionHelper.promoteAttached);
+        builder.append(", streaming=");
+        builder.append(artifactPromotionHelper.streaming);
+        builder.append(", cleanupLocalRepository=");
+        builder.append(artifactPromotionHelper.cleanupLocalRepository);
+        builder.append(", deferDeletion=");
+        builder.append(artifactPromotionHelper.deferDeletion);
+        builder.append(", memoryThreshold=");
+        builder.append(artifactPromotionHelper.memoryThreshold);
+        builder.append(", retries=");
+        builder.append(artifactPromotionHelper.retries);
+        builder.append(", priority=");
+        builder.append(artifactPromotionHelper.priority);
         builder.append("]");
         return builder.toString();
     }
@@ -26,18 +26,20 @@ import hudson.FilePath;
 import hudson.Launcher;
 import hudson.model.Run;
 import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
 import hudson.util.Secret;
 import jenkins.model.Jenkins;
 import org.jenkinsci.plugins.artifactpromotion.exception.PromotionException;
 import org.jenkinsci.plugins.artifactpromotion.jobdsl.ArtifactPromotionJobDslExtension;
 import org.jenkinsci.plugins.tokenmacro.MacroEvaluationException;
-import org.jenkinsci.plugins.tokenmacro.TokenMacro;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.io.Serializable;
+import java.nio.file.Files;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
 
 /**
@@ -48,6 +50,13 @@ import java.util.Map;
  */
 public class ArtifactPromotionHelper implements Serializable {
 
+    /**
+     * The default number of artifacts promoted concurrently in batch mode.
+     */
+    public static final int DEFAULT_PARALLELISM = 4;
+
+    public static final int DEFAULT_RETRIES = 2;
+
     protected final String groupId;
     protected final String artifactId;
     protected final String classifier;
@@ -109,6 +118,58 @@ public class ArtifactPromotionHelper implements Serializable {
      */
     protected boolean skipDeletion;
 
+    /**
+     * A batch of artifacts to promote, given as whitespace or comma separated
+     * coordinates in the form groupId:artifactId[:extension[:classifier]]:version.
+     * If set, the single artifact coordinates are ignored.
+     */
+    protected String artifacts;
+
+    /**
+     * The maximum number of artifacts of a batch which are promoted concurrently.
+     */
+    protected int parallelism = DEFAULT_PARALLELISM;
+
+    /**
+     * If true promote all files of the version found in the staging
+     * repository, e.g. sources, javadoc and signatures.
+     */
+    protected boolean promoteAttached;
+
+    /**
+     * If true pipe the artifact from the staging into the release repository
+     * without writing it to the local repository.
+     */
+    protected boolean streaming;
+
+    /**
+     * If true delete the files the promotion wrote into the local repository
+     * of the workspace after the promotion.
+     */
+    protected boolean cleanupLocalRepository;
+
+    /**
+     * If true the promoted versions are deleted from the staging repository
+     * in the background on the master, after the build step has finished.
+     */
+    protected boolean deferDeletion;
+
+    /**
+     * The size in KB up to which artifacts are kept in a RAM backed local
+     * repository, 0 to disable it.
+     */
+    protected int memoryThreshold;
+
+    /**
+     * The number of retries of an artifact after a failed transfer.
+     */
+    protected int retries = DEFAULT_RETRIES;
+
+    /**
+     * Promotions with a higher priority leave the promotion queue first.
+     */
+    protected int priority;
+
     /**
      * The default constructor. The parameters are injected by jenkins builder
      * and are the same as the (private) fields.
@@ -149,6 +210,77 @@ public class ArtifactPromotionHelper implements Serializable {
     }
 
     public void perform(PrintStream logger, Run<?, ?> build, FilePath workspace, Launcher launcher, TaskListener listener) throws PromotionException {
+        AbstractPromotor artifactPromotor = prepare(logger, build, workspace, listener,
+                workspace.getRemote() + File.separator + this.localRepoLocation, false);
+
+        try {
+            artifactPromotor.callPromotor(launcher.getChannel());
+        } catch (PromotionException promEx) {
+            logger.println(promEx.getMessage());
+            throw promEx;
+        }
+    }
+
+    /**
+     * Starts the promotion without waiting for it to finish. Without a
+     * workspace the promotion runs on the controller, using a temporary
+     * local repository which is deleted afterwards. Only HTTP repositories
+     * are accepted then, a file URL would give the build access to the file
+     * system of the controller.
+     *
+     * @param workspace the workspace, may be null
+     * @param launcher the launcher, may be null
+     * @param resumed true if the promotion is started again after a restart
+     * @return the running promotion
+     */
+    public RunningPromotion start(PrintStream logger, Run<?, ?> build, FilePath workspace, Launcher launcher,
+            TaskListener listener, boolean resumed) throws PromotionException {
+        File temporaryRepository = null;
+        String localRepoPath;
+        VirtualChannel channel;
+        if (workspace == null) {
+            try {
+                temporaryRepository = Files.createTempDirectory("artifact-promotion").toFile();
+            } catch (IOException e) {
+                throw new PromotionException("Could not create a temporary local repository: " + e.getMessage(), e);
+            }
+            localRepoPath = temporaryRepository.getAbsolutePath();
+            channel = FilePath.localChannel;
+            if (debug) {
+                logger.println("No workspace available, promoting on the controller");
+            }
+        } else {
+            localRepoPath = workspace.getRemote() + File.separator + this.localRepoLocation;
+            channel = launcher != null ? launcher.getChannel() : workspace.getChannel();
+        }
+
+        try {
+            AbstractPromotor artifactPromotor = prepare(logger, build, workspace, listener, localRepoPath, resumed);
+            if (workspace == null) {
+                checkRemote(artifactPromotor.getExpandedTokens().get(PromotionBuildTokens.STAGING_REPOSITORY));
+                checkRemote(artifactPromotor.getExpandedTokens().get(PromotionBuildTokens.RELEASE_REPOSITORY));
+            }
+            return artifactPromotor.start(channel).deleteOnCompletion(temporaryRepository);
+        } catch (PromotionException promEx) {
+            logger.println(promEx.getMessage());
+            RunningPromotion.delete(temporaryRepository);
+            throw promEx;
+        } catch (RuntimeException e) {
+            RunningPromotion.delete(temporaryRepository);
+            throw e;
+        }
+    }
+
+    private static void checkRemote(String repository) throws PromotionException {
+        String url = repository == null ? "" : repository.trim().toLowerCase(Locale.ENGLISH);
+        if (!url.startsWith("http://") && !url.startsWith("https://")) {
+            throw new PromotionException("The repository " + repository + " is not an HTTP repository, "
+                    + "promote from it inside a node block");
+        }
+    }
+
+    private AbstractPromotor prepare(PrintStream logger, Run<?, ?> build, FilePath workspace, TaskListener listener,
+            String localRepoPath, boolean resumed) {
         AbstractPromotor artifactPromotor = null;
 
         // Initialize the promoter class
@@ -186,21 +318,23 @@ public class ArtifactPromotionHelper implements Serializable {
         artifactPromotor.setStagingUser(stagingUser);
         artifactPromotor.setSkipDeletion(skipDeletion);
         artifactPromotor.setDebug(debug);
+        artifactPromotor.setParallelism(parallelism);
+        artifactPromotor.setPromoteAttached(promoteAttached);
+        artifactPromotor.setStreaming(streaming);
+        artifactPromotor.setCleanupLocalRepository(cleanupLocalRepository);
+        artifactPromotor.setDeferDeletion(deferDeletion);
+        artifactPromotor.setMemoryThreshold(memoryThreshold);
+        artifactPromotor.setRetries(retries);
+        artifactPromotor.setResumed(resumed);
+        artifactPromotor.setPriority(priority);
+        artifactPromotor.setOwner(build.getParent().getParent().getFullName(), build.getParent().getFullName());
 
-        String localRepoPath = workspace.getRemote() + File.separator
-                + this.localRepoLocation;
         artifactPromotor.setLocalRepositoryURL(localRepoPath);
 
         if (debug) {
             logger.println("Local repository path: [" + localRepoPath + "]");
         }
-
-        try {
-            artifactPromotor.callPromotor(launcher.getChannel());
-        } catch (PromotionException promEx) {
-            logger.println(promEx.getMessage());
-            throw promEx;
-        }
+        return artifactPromotor;
     }
 
     /**
@@ -213,22 +347,19 @@ public class ArtifactPromotionHelper implements Serializable {
     private Map<PromotionBuildTokens, String> expandTokens(
             Run<?, ?> build, FilePath workspace, TaskListener listener) {
         PrintStream logger = listener.getLogger();
-        Map<PromotionBuildTokens, String> tokens = new HashMap<PromotionBuildTokens, String>();
+        Map<PromotionBuildTokens, String> templates = new HashMap<PromotionBuildTokens, String>();
+        templates.put(PromotionBuildTokens.GROUP_ID, groupId);
+        templates.put(PromotionBuildTokens.ARTIFACT_ID, artifactId);
+        templates.put(PromotionBuildTokens.CLASSIFIER, classifier);
+        templates.put(PromotionBuildTokens.VERSION, version);
+        templates.put(PromotionBuildTokens.EXTENSION, "".equals(extension) ? "jar" : extension);
+        templates.put(PromotionBuildTokens.STAGING_REPOSITORY, stagingRepository);
+        templates.put(PromotionBuildTokens.RELEASE_REPOSITORY, releaseRepository);
+        templates.put(PromotionBuildTokens.ARTIFACTS, artifacts == null || artifacts.trim().length() == 0 ? ""
+                : artifacts);
+        Map<PromotionBuildTokens, String> tokens;
         try {
-            tokens.put(PromotionBuildTokens.GROUP_ID,
-                    TokenMacro.expandAll(build, workspace, listener, groupId));
-            tokens.put(PromotionBuildTokens.ARTIFACT_ID,
-                    TokenMacro.expandAll(build, workspace, listener, artifactId));
-            tokens.put(PromotionBuildTokens.CLASSIFIER,
-                    TokenMacro.expandAll(build, workspace, listener, classifier));
-            tokens.put(PromotionBuildTokens.VERSION,
-                    TokenMacro.expandAll(build, workspace, listener, version));
-            tokens.put(PromotionBuildTokens.EXTENSION, "".equals(extension) ? "jar" :
-                    TokenMacro.expandAll(build, workspace, listener, extension));
-            tokens.put(PromotionBuildTokens.STAGING_REPOSITORY,
-                    TokenMacro.expandAll(build, workspace, listener, stagingRepository));
-            tokens.put(PromotionBuildTokens.RELEASE_REPOSITORY,
-                    TokenMacro.expandAll(build, workspace, listener, releaseRepository));
+            tokens = TokenExpander.expand(build, workspace, listener, templates);
         } catch (MacroEvaluationException mee) {
             logger.println("Could not evaluate a makro" + mee);
             return null;
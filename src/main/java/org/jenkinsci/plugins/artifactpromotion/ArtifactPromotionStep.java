@@ -28,6 +28,7 @@ import hudson.FilePath;
 import hudson.Launcher;
 import hudson.model.Run;
 import hudson.model.TaskListener;
+import jenkins.util.Timer;
 import net.sf.json.JSONObject;
 import org.jenkinsci.plugins.workflow.steps.*;
 import org.kohsuke.stapler.DataBoundConstructor;
@@ -35,9 +36,11 @@ import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.StaplerRequest2;
 
 import javax.annotation.Nonnull;
-import java.io.PrintStream;
+import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.Set;
+import java.util.UUID;
 
 /**
  * Executes a promotion configured via a pipeline.
@@ -83,31 +86,128 @@ public class ArtifactPromotionStep extends Step implements Serializable {
         return new ArtifactPromotionExecution(stepContext, this);
     }
 
-    private static final class ArtifactPromotionExecution extends SynchronousNonBlockingStepExecution<Void> {
+    /**
+     * Runs the promotion without holding a thread while the artifacts are
+     * transferred. The remote call is started asynchronously, the step is
+     * completed from {@link RunningPromotion#whenDone(Runnable)}, which checks
+     * the call on the {@link Timer} without blocking.
+     */
+    private static final class ArtifactPromotionExecution extends StepExecution {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ArtifactPromotionStep step;
 
-        private StepContext context;
+        /**
+         * Names the marker file written to the build directory then the
+         * promotion has completed.
+         */
+        private final String id = UUID.randomUUID().toString();
 
-        private ArtifactPromotionStep step;
+        private transient volatile RunningPromotion promotion;
+
+        private transient volatile boolean stopped;
 
         protected ArtifactPromotionExecution(@Nonnull StepContext context, ArtifactPromotionStep step) {
             super(context);
-            this.context = context;
             this.step = step;
         }
 
         @Override
-        protected Void run() throws Exception {
+        public boolean start() throws Exception {
+            Timer.get().submit(new Runnable() {
+                public void run() {
+                    launch(false);
+                }
+            });
+            return false;
+        }
 
-            PrintStream logger = context.get(TaskListener.class).getLogger();
+        /**
+         * The remote call doesn't survive a restart of the controller, so the
+         * promotion is started again, unless it had completed before the
+         * restart. Artifacts already in the release repository are skipped,
+         * also if the interrupted run deleted them from staging already.
+         */
+        @Override
+        public void onResume() {
+            try {
+                TaskListener listener = getContext().get(TaskListener.class);
+                if (getMarker(getContext().get(Run.class)).isFile()) {
+                    listener.getLogger().println("The promotion had completed before the restart");
+                    getContext().onSuccess(null);
+                    return;
+                }
+                listener.getLogger().println("Resuming the promotion after a restart");
+            } catch (Exception e) {
+                getContext().onFailure(e);
+                return;
+            }
+            Timer.get().submit(new Runnable() {
+                public void run() {
+                    launch(true);
+                }
+            });
+        }
 
-            Run<?, ?> build = context.get(Run.class);
-            FilePath workspace = context.get(FilePath.class);
-            Launcher launcher = context.get(Launcher.class);
-            TaskListener listener = context.get(TaskListener.class);
+        @Override
+        public void stop(@Nonnull Throwable cause) throws Exception {
+            stopped = true;
+            RunningPromotion running = promotion;
+            if (running != null) {
+                running.cancel();
+            }
+            getContext().onFailure(cause);
+        }
 
-            step.artifactPromotionHelper.perform(logger, build, workspace, launcher, listener);
-            return null;
+        private void launch(boolean resumed) {
+            try {
+                StepContext context = getContext();
+                final TaskListener listener = context.get(TaskListener.class);
+                final Run<?, ?> build = context.get(Run.class);
+                FilePath workspace = context.get(FilePath.class);
+                Launcher launcher = context.get(Launcher.class);
+
+                final RunningPromotion running = step.artifactPromotionHelper.start(listener.getLogger(), build,
+                        workspace, launcher, listener, resumed);
+                promotion = running;
+                if (stopped) {
+                    running.cancel();
+                    return;
+                }
+                running.whenDone(new Runnable() {
+                    public void run() {
+                        complete(running, build, listener);
+                    }
+                });
+            } catch (Exception e) {
+                getContext().onFailure(e);
+            }
+        }
 
+        private void complete(RunningPromotion running, Run<?, ?> build, TaskListener listener) {
+            if (stopped) {
+                return;
+            }
+            try {
+                running.get();
+            } catch (Exception e) {
+                getContext().onFailure(e);
+                return;
+            }
+            try {
+                // a restart before the step is recorded as completed doesn't repeat the promotion
+                File marker = getMarker(build);
+                marker.getParentFile().mkdirs();
+                marker.createNewFile();
+            } catch (IOException e) {
+                listener.getLogger().println("Could not record the completed promotion: " + e.getMessage());
+            }
+            getContext().onSuccess(null);
+        }
+
+        private File getMarker(Run<?, ?> build) {
+            return new File(build.getRootDir(), "artifact-promotion" + File.separator + id + ".completed");
         }
 
     }
@@ -178,6 +278,87 @@ public class ArtifactPromotionStep extends Step implements Serializable {
         return artifactPromotionHelper.promoterClass;
     }
 
+    @DataBoundSetter
+    public void setArtifacts(String artifacts) {
+        artifactPromotionHelper.artifacts = artifacts;
+    }
+
+    public String getArtifacts() {
+        return artifactPromotionHelper.artifacts;
+    }
+
+    @DataBoundSetter
+    public void setParallelism(int parallelism) {
+        artifactPromotionHelper.parallelism = parallelism;
+    }
+
+    public int getParallelism() {
+        return artifactPromotionHelper.parallelism;
+    }
+
+    @DataBoundSetter
+    public void setPromoteAttached(boolean promoteAttached) {
+        artifactPromotionHelper.promoteAttached = promoteAttached;
+    }
+
+    public boolean isPromoteAttached() {
+        return artifactPromotionHelper.promoteAttached;
+    }
+
+    @DataBoundSetter
+    public void setStreaming(boolean streaming) {
+        artifactPromotionHelper.streaming = streaming;
+    }
+
+    public boolean isStreaming() {
+        return artifactPromotionHelper.streaming;
+    }
+
+    @DataBoundSetter
+    public void setCleanupLocalRepository(boolean cleanupLocalRepository) {
+        artifactPromotionHelper.cleanupLocalRepository = cleanupLocalRepository;
+    }
+
+    public boolean isCleanupLocalRepository() {
+        return artifactPromotionHelper.cleanupLocalRepository;
+    }
+
+    @DataBoundSetter
+    public void setDeferDeletion(boolean deferDeletion) {
+        artifactPromotionHelper.deferDeletion = deferDeletion;
+    }
+
+    public boolean isDeferDeletion() {
+        return artifactPromotionHelper.deferDeletion;
+    }
+
+    @DataBoundSetter
+    public void setMemoryThreshold(int memoryThreshold) {
+        artifactPromotionHelper.memoryThreshold = memoryThreshold;
+    }
+
+    public int getMemoryThreshold() {
+        return artifactPromotionHelper.memoryThreshold;
+    }
+
+    @DataBoundSetter
+    public void setRetries(int retries) {
+        artifactPromotionHelper.retries = retries;
+    }
+
+    public int getRetries() {
+        return artifactPromotionHelper.retries;
+    }
+
+    @DataBoundSetter
+    public void setPriority(int priority) {
+        artifactPromotionHelper.priority = priority;
+    }
+
+    public int getPriority() {
+        return artifactPromotionHelper.priority;
+    }
+
     @Extension
     public static final class ArtifactPromotionStepDescriptorImpl extends
             StepDescriptor implements FormValidator {
@@ -188,7 +369,8 @@ public class ArtifactPromotionStep extends Step implements Serializable {
 
         @Override
         public Set<? extends Class<?>> getRequiredContext() {
-            return ImmutableSet.of(Run.class, FilePath.class, Launcher.class, TaskListener.class);
+            // a workspace is optional, without it the promotion runs on the controller
+            return ImmutableSet.of(Run.class, TaskListener.class);
         }
 
         @Override
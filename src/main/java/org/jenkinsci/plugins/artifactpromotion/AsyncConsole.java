@@ -0,0 +1,206 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Halil-Cem Guersoy and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.artifactpromotion;
+
+import hudson.model.TaskListener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link TaskListener} which queues the output of a promotion and writes
+ * it to the console of the build in batches from a background thread. On
+ * an agent every write to the console is sent to the master, so the
+ * transfer threads would otherwise wait for the remote console.
+ * <p>
+ * The queue is bounded by the system property
+ * <code>org.jenkinsci.plugins.artifactpromotion.AsyncConsole.queueSize</code>
+ * (default 1024 writes). If it is full, lines written to {@link #getLogger()}
+ * wait, while progress written to {@link #getProgress()} is dropped.
+ */
+public class AsyncConsole implements TaskListener {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int QUEUE_SIZE = Integer.getInteger(AsyncConsole.class.getName() + ".queueSize", 1024);
+
+    private static final int MAX_BATCH = 256;
+
+    private static final long CLOSE_TIMEOUT = 10000;
+
+    private static final byte[] END = new byte[0];
+
+    private final transient PrintStream target;
+
+    private final transient BlockingQueue<byte[]> queue = new ArrayBlockingQueue<byte[]>(QUEUE_SIZE);
+
+    private final transient PrintStream logger;
+
+    private final transient PrintStream progress;
+
+    private final transient AtomicLong dropped = new AtomicLong();
+
+    private final transient Thread writer;
+
+    /**
+     * Set then the background thread has stopped, later output is written directly.
+     */
+    private transient volatile boolean closed;
+
+    /**
+     * @param target the console of the build.
+     */
+    public AsyncConsole(PrintStream target) {
+        this.target = target;
+        try {
+            this.logger = new PrintStream(new QueueStream(false), true, "UTF-8");
+            this.progress = new PrintStream(new QueueStream(true), true, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        this.writer = new Thread(new Runnable() {
+            public void run() {
+                write();
+            }
+        }, "artifact-promotion-console");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    public PrintStream getLogger() {
+        return logger;
+    }
+
+    /**
+     * @return a stream for progress output, which is dropped if the console can't keep up.
+     */
+    public PrintStream getProgress() {
+        return progress;
+    }
+
+    /**
+     * Writes the remaining output to the console and stops the background
+     * thread.
+     */
+    public void close() {
+        logger.flush();
+        progress.flush();
+        try {
+            if (!queue.offer(END, CLOSE_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                target.println("Console output of the promotion could not be written completely");
+            }
+            writer.join(CLOSE_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        closed = true;
+        if (dropped.get() > 0) {
+            target.println("Skipped " + dropped.get() + " progress updates of a slow console");
+        }
+        target.flush();
+    }
+
+    private void write() {
+        List<byte[]> batch = new ArrayList<byte[]>(MAX_BATCH);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(8192);
+        try {
+            while (true) {
+                batch.add(queue.take());
+                queue.drainTo(batch, MAX_BATCH - 1);
+                boolean end = false;
+                for (byte[] bytes : batch) {
+                    if (bytes == END) {
+                        end = true;
+                        break;
+                    }
+                    buffer.write(bytes, 0, bytes.length);
+                }
+                buffer.writeTo(target);
+                target.flush();
+                buffer.reset();
+                batch.clear();
+                if (end) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // the console is gone, nothing left to write to
+        } finally {
+            closed = true;
+        }
+    }
+
+    /**
+     * Puts every write as one entry into the queue.
+     */
+    private final class QueueStream extends OutputStream {
+
+        private final boolean droppable;
+
+        QueueStream(boolean droppable) {
+            this.droppable = droppable;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            if (closed) {
+                target.write(b, off, len);
+                return;
+            }
+            byte[] bytes = new byte[len];
+            System.arraycopy(b, off, bytes, 0, len);
+            if (droppable) {
+                if (!queue.offer(bytes)) {
+                    dropped.incrementAndGet();
+                }
+                return;
+            }
+            try {
+                queue.put(bytes);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while writing to the console", e);
+            }
+        }
+    }
+
+}
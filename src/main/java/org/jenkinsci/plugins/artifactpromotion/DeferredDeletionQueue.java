@@ -0,0 +1,243 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Halil-Cem Guersoy and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.artifactpromotion;
+
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.PeriodicWork;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.LogTaskListener;
+import hudson.util.NamingThreadFactory;
+import hudson.util.Secret;
+import jenkins.model.Jenkins;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.repository.RemoteRepository;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Deletes promoted versions from the staging repository in the background on
+ * the master, so a build doesn't wait for the deletion and a failed deletion
+ * doesn't fail a promotion. The queue is saved to
+ * <code>$JENKINS_HOME/org.jenkinsci.plugins.artifactpromotion.DeferredDeletionQueue.xml</code>
+ * and continued after a restart.
+ * <p>
+ * At most <code>...workers</code> deletions (default 2) run at the same time.
+ * A failed deletion is retried after <code>...retryDelay</code> ms (default
+ * 60000), doubled with every attempt, and dropped after
+ * <code>...maxAttempts</code> (default 10) attempts. The properties are system
+ * properties of the master prefixed with the name of this class.
+ */
+public final class DeferredDeletionQueue {
+
+    private static final Logger LOGGER = Logger.getLogger(DeferredDeletionQueue.class.getName());
+
+    private static final String PREFIX = DeferredDeletionQueue.class.getName() + ".";
+
+    private static final int WORKERS = Integer.getInteger(PREFIX + "workers", 2);
+
+    private static final int MAX_ATTEMPTS = Integer.getInteger(PREFIX + "maxAttempts", 10);
+
+    private static final long RETRY_DELAY = Long.getLong(PREFIX + "retryDelay", 60 * 1000);
+
+    private static final DeferredDeletionQueue INSTANCE = new DeferredDeletionQueue();
+
+    /**
+     * The pending deletions, guarded by this.
+     */
+    private final List<Deletion> deletions = new ArrayList<Deletion>();
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, WORKERS),
+            new NamingThreadFactory(new DaemonThreadFactory(), "artifact-promotion-deletion"));
+
+    private boolean loaded;
+
+    private DeferredDeletionQueue() {
+    }
+
+    public static DeferredDeletionQueue getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Queues versions for deletion and starts deleting them.
+     *
+     * @param versions the versions as groupId:artifactId:version.
+     */
+    public void add(String stagingRepository, String user, Secret password, List<String> versions) {
+        synchronized (this) {
+            load();
+            for (String version : versions) {
+                String[] parts = version.split(":");
+                if (parts.length == 3) {
+                    deletions.add(new Deletion(stagingRepository, user, password, parts[0], parts[1], parts[2]));
+                }
+            }
+            save();
+        }
+        drain();
+    }
+
+    /**
+     * Starts the deletions which are due.
+     */
+    public synchronized void drain() {
+        load();
+        long now = System.currentTimeMillis();
+        for (final Deletion deletion : deletions) {
+            if (!deletion.running && deletion.nextAttempt <= now) {
+                deletion.running = true;
+                executor.submit(new Runnable() {
+                    public void run() {
+                        delete(deletion);
+                    }
+                });
+            }
+        }
+    }
+
+    private void delete(Deletion deletion) {
+        RemoteRepository repository = new RemoteRepository.Builder("stagingrepo", "default",
+                deletion.stagingRepository).build();
+        DeleteArtifactNexusOSS deleter = new DeleteArtifactNexusOSS(new LogTaskListener(LOGGER, Level.FINE),
+                deletion.user, deletion.password, false);
+        try {
+            deleter.deleteArtifact(repository, new DefaultArtifact(deletion.groupId, deletion.artifactId, "pom",
+                    deletion.version));
+            LOGGER.info("Deleted " + deletion + " from " + deletion.stagingRepository);
+            synchronized (this) {
+                deletions.remove(deletion);
+                save();
+            }
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                deletion.attempts++;
+                deletion.running = false;
+                if (deletion.attempts >= MAX_ATTEMPTS) {
+                    LOGGER.log(Level.WARNING, "Giving up deleting " + deletion + " from "
+                            + deletion.stagingRepository + " after " + deletion.attempts + " attempts", e);
+                    deletions.remove(deletion);
+                } else {
+                    LOGGER.log(Level.FINE, "Deleting " + deletion + " failed, retrying later", e);
+                    deletion.nextAttempt = System.currentTimeMillis()
+                            + (RETRY_DELAY << Math.min(deletion.attempts - 1, 6));
+                }
+                save();
+            }
+        }
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        XmlFile file = getFile();
+        if (file == null || !file.exists()) {
+            return;
+        }
+        try {
+            @SuppressWarnings("unchecked")
+            List<Deletion> saved = (List<Deletion>) file.read();
+            deletions.addAll(saved);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not load the deferred deletions from " + file, e);
+        }
+    }
+
+    private void save() {
+        XmlFile file = getFile();
+        if (file == null) {
+            return;
+        }
+        try {
+            file.write(new ArrayList<Deletion>(deletions));
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not save the deferred deletions to " + file, e);
+        }
+    }
+
+    private static XmlFile getFile() {
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (jenkins == null) {
+            return null;
+        }
+        return new XmlFile(Jenkins.XSTREAM2, new File(jenkins.getRootDir(),
+                DeferredDeletionQueue.class.getName() + ".xml"));
+    }
+
+    /**
+     * A version to delete from a staging repository.
+     */
+    static final class Deletion {
+        private final String stagingRepository;
+        private final String user;
+        private final Secret password;
+        private final String groupId;
+        private final String artifactId;
+        private final String version;
+        private int attempts;
+        private long nextAttempt;
+        private transient boolean running;
+
+        Deletion(String stagingRepository, String user, Secret password, String groupId, String artifactId,
+                String version) {
+            this.stagingRepository = stagingRepository;
+            this.user = user;
+            this.password = password;
+            this.groupId = groupId;
+            this.artifactId = artifactId;
+            this.version = version;
+        }
+
+        @Override
+        public String toString() {
+            return groupId + ":" + artifactId + ":" + version;
+        }
+    }
+
+    /**
+     * Loads the queue after a restart and retries the failed deletions.
+     */
+    @Extension
+    public static final class Worker extends PeriodicWork {
+
+        @Override
+        public long getRecurrencePeriod() {
+            return MIN;
+        }
+
+        @Override
+        protected void doRun() {
+            DeferredDeletionQueue.getInstance().drain();
+        }
+    }
+
+}
@@ -22,17 +22,14 @@
  */
 package org.jenkinsci.plugins.artifactpromotion;
 
-import com.sun.jersey.api.client.Client;
-import com.sun.jersey.api.client.ClientResponse;
-import com.sun.jersey.api.client.WebResource;
-import com.sun.jersey.core.util.Base64;
 import hudson.model.TaskListener;
 import hudson.util.Secret;
+import org.apache.http.client.methods.HttpDelete;
 import org.eclipse.aether.artifact.Artifact;
 import org.eclipse.aether.repository.RemoteRepository;
 
+import java.io.IOException;
 import java.io.Serializable;
-import java.io.UnsupportedEncodingException;
 
 /**
  * This class is responsible to remove a artifact from a Nexus OSS repository.
@@ -79,6 +76,7 @@ public class DeleteArtifactNexusOSS implements IDeleteArtifact, Serializable {
 
     /** 
      * Delete a artifact from a Nexus OSS repo using the REST interface of NexusOSS.
+     * The request is sent using the {@link PooledHttpClient} shared by all promotions.
      *
      * @see org.jenkinsci.plugins.artifactpromotion.IDeleteArtifact#deleteArtifact(org.eclipse.aether.repository.RemoteRepository, org.eclipse.aether.artifact.Artifact)
      */
@@ -89,25 +87,30 @@ public class DeleteArtifactNexusOSS implements IDeleteArtifact, Serializable {
         
         if (debug) listener.getLogger().println("Request URL is: [" + requestURL + "]");
 
-        //TODO needs rework for anonymous access
-        String auth = null;
-        try {
-            auth = new String(Base64.encode(this.user + ":" + Secret.toString(this.password)), "UTF8");
-        } catch (UnsupportedEncodingException e) {
-            throw new IllegalStateException("The encoding UTF8 is not supported on your platform. Aborting here.");
+        HttpDelete request = new HttpDelete(requestURL);
+        request.setHeader("Accept", "application/json");
+        String auth = RemoteRepositoryAccess.getAuthorization(this.user, this.password);
+        if (auth != null) {
+            request.setHeader("Authorization", auth);
         }
 
-        Client client = Client.create();
-        WebResource webResource = client.resource(requestURL);
-        ClientResponse response = webResource.header("Authorization", "Digest " + auth).type("application/json")
-                .accept("application/json").delete(ClientResponse.class);
-
-        int statusCode = response.getStatus();
+        int statusCode;
+        try {
+            statusCode = PooledHttpClient.execute(request).getStatus();
+        } catch (IOException e) {
+            throw new IllegalStateException("The artifact is not deleted - request failed: " + e.getMessage(), e);
+        }
 
         if (debug) listener.getLogger().println("Status code is: " + statusCode);
+        if (debug) listener.getLogger().println("HTTP " + PooledHttpClient.describeStats());
 
         if (statusCode == 401) {
             throw new IllegalStateException("Invalid Username or Password while accessing target repository.");
+        } else if (statusCode == 404) {
+            // e.g. deleted by a promotion interrupted by a restart of the controller
+            listener.getLogger().println("Artifact " + artifact.getArtifactId() + " is already deleted from repository "
+                    + stagingRepo.getUrl());
+            return;
         } else if (statusCode != NEXUS_DELETE_SUCESS) {
             throw new IllegalStateException("The artifact is not deleted - status code is: " + statusCode);
         }
@@ -0,0 +1,45 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Halil-Cem Guersoy and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.artifactpromotion;
+
+import java.util.List;
+
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.repository.RemoteRepository;
+
+public interface IListArtifacts {
+
+    /**
+     * This method is responsible to list all files which belong to a version
+     * of an artifact, e.g. the main artifact, its POM, sources, javadoc and
+     * signatures. Checksum files and repository metadata are not listed.
+     *
+     * @param stagingRepo - The staging repository.
+     * @param artifact - The artifact whose version has to be listed.
+     * @return The artifacts found, each with its classifier and extension set.
+     * @throws IllegalStateException Thrown then something goes wrong.
+     */
+    public abstract List<Artifact> listAttachedArtifacts(RemoteRepository stagingRepo, Artifact artifact)
+            throws IllegalStateException;
+
+}
@@ -38,8 +38,9 @@ public interface IPromotorClosure {
     /**
      * This methods does the real 'promotion'.
      *
+     * @return the metrics of the promotion.
      * @throws PromotionException
      */
-    public abstract void promote() throws PromotionException;
+    public abstract PromotionMetrics promote() throws PromotionException;
 
 }
\ No newline at end of file
@@ -23,9 +23,9 @@
 package org.jenkinsci.plugins.artifactpromotion;
 
 import java.io.PrintStream;
-import java.text.DecimalFormat;
-import java.text.DecimalFormatSymbols;
-import java.util.Locale;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.aether.transfer.AbstractTransferListener;
 import org.eclipse.aether.transfer.TransferEvent;
@@ -35,6 +35,10 @@ import org.eclipse.aether.transfer.TransferResource;
  * A simplistic transfer listener that logs uploads/downloads to the jenkins console.
  * This is based on the sonatype examples for aether but adapted for jenkins to prevent 
  * output garbage.
+ * <p>
+ * The progress bar of a transfer is extended at most every {@link #UPDATE_INTERVAL} ms,
+ * as every write is sent to the master when running on an agent. The callbacks of a
+ * running transfer don't allocate objects.
  */
 public class JenkinsConsoleTransferListener
     extends AbstractTransferListener
@@ -42,20 +46,46 @@ public class JenkinsConsoleTransferListener
     
     private final static int barWidth = 50;
 
+    /**
+     * The minimum time between two updates of a progress bar in ms.
+     */
+    static final long UPDATE_INTERVAL = 500;
+
+    private static final byte[] BAR = new byte[barWidth];
+
+    static {
+        Arrays.fill(BAR, (byte) '#');
+    }
+
     private PrintStream jenkinsOut;
 
-    private int lastLength = 0;
+    private PrintStream progressOut;
+
+    /**
+     * The progress of the running transfers, the connector transfers several files concurrently.
+     */
+    private final Map<TransferResource, Progress> progress = new ConcurrentHashMap<TransferResource, Progress>();
     
     public JenkinsConsoleTransferListener( PrintStream jenkinsOut )
     {
-        if (jenkinsOut == null) throw new IllegalArgumentException("The transferlistener needs an outputstream. Somtehing has gone wrong");
+        this( jenkinsOut, jenkinsOut );
+    }
+
+    /**
+     * @param jenkinsOut the stream for the messages
+     * @param progressOut the stream for the progress bars, e.g. {@link AsyncConsole#getProgress()}
+     */
+    public JenkinsConsoleTransferListener( PrintStream jenkinsOut, PrintStream progressOut )
+    {
+        if (jenkinsOut == null || progressOut == null) throw new IllegalArgumentException("The transferlistener needs an outputstream. Somtehing has gone wrong");
         this.jenkinsOut = jenkinsOut;
+        this.progressOut = progressOut;
     }
 
     @Override
     public void transferInitiated( TransferEvent event )
     {
-        lastLength = 0;
+        progress.put(event.getResource(), new Progress());
         String message = event.getRequestType() == TransferEvent.RequestType.PUT ? "Uploading" : "Downloading";
         jenkinsOut.println( message + ": " + event.getResource().getRepositoryUrl() + event.getResource().getResourceName() );
     }
@@ -63,24 +93,38 @@ public class JenkinsConsoleTransferListener
     @Override
     public void transferProgressed( TransferEvent event )
     {
-        TransferResource resource = event.getResource();
-        long total = resource.getContentLength();
-        long complete = event.getTransferredBytes();
-        long percent = (long)(((double)complete / (double)total) * 100);
-        int length = (int)(barWidth * percent / 100);
-        if (length > lastLength) {
-            StringBuffer bar = new StringBuffer(length - lastLength);
-            for (int i = 0; i < length - lastLength; i++) {
-                bar.append("#");
-            }
-            jenkinsOut.print(bar.toString());                
-            lastLength = length;
+        Progress state = progress.get(event.getResource());
+        if (state == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (now - state.lastUpdate < UPDATE_INTERVAL) {
+            return;
+        }
+        state.lastUpdate = now;
+        long total = event.getResource().getContentLength();
+        if (total > 0) {
+            render(state, (int) (Math.min(event.getTransferredBytes(), total) * barWidth / total));
+        }
+    }
+
+    /**
+     * Extends the progress bar of a transfer up to the given length.
+     */
+    private void render(Progress state, int length) {
+        if (length > state.length) {
+            progressOut.write(BAR, 0, length - state.length);
+            state.length = length;
         }
     }
 
     @Override
     public void transferSucceeded( TransferEvent event )
     {
+        Progress state = progress.remove(event.getResource());
+        if (state != null) {
+            render(state, barWidth);
+        }
         transferCompleted( event );
         TransferResource resource = event.getResource();
         long contentLength = event.getTransferredBytes();
@@ -92,9 +136,9 @@ public class JenkinsConsoleTransferListener
             if ( duration > 0 )
             {
                 long bytes = contentLength - resource.getResumeOffset();
-                DecimalFormat format = new DecimalFormat( "0.0", new DecimalFormatSymbols( Locale.ENGLISH ) );
-                double kbPerSec = ( bytes / 1024.0 ) / ( duration / 1000.0 );
-                throughput = " at " + format.format( kbPerSec ) + " KB/sec";
+                // KB/sec with one decimal place
+                long tenths = bytes * 10000 / 1024 / duration;
+                throughput = " at " + tenths / 10 + "." + tenths % 10 + " KB/sec";
             }
             jenkinsOut.println( type + ": " + resource.getRepositoryUrl() + resource.getResourceName() + " (" + throughput + ")" );
         }
@@ -103,6 +147,7 @@ public class JenkinsConsoleTransferListener
     @Override
     public void transferFailed( TransferEvent event )
     {        
+        progress.remove(event.getResource());
         jenkinsOut.println("\rSomething has gone wrong and the transfer has failed: " + event.getException().getMessage());
     }
 
@@ -113,6 +158,15 @@ public class JenkinsConsoleTransferListener
 
     public void transferCorrupted( TransferEvent event )
     {
+        progress.remove(event.getResource());
         jenkinsOut.println("\rSomething has gone wrong and the transfer has been corrupted: " + event.getException().getMessage());
     }
+
+    /**
+     * The state of the progress bar of one transfer.
+     */
+    private static final class Progress {
+        private int length;
+        private long lastUpdate;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,226 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Halil-Cem Guersoy and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.artifactpromotion;
+
+import hudson.model.TaskListener;
+import hudson.util.Secret;
+import org.apache.http.client.methods.HttpGet;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.repository.RemoteRepository;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * This class is responsible to list the files of an artifact version in a
+ * Nexus OSS repository. Nexus has no REST API to query the attached artifacts
+ * of a version, so the HTML index of the version directory is parsed. Local
+ * file repositories are listed directly.
+ */
+public class ListArtifactsNexusOSS implements IListArtifacts, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The URL path delimiter.
+     */
+    private static final String DELI = "/";
+
+    /**
+     * Matches the links of a directory index page.
+     */
+    private static final Pattern HREF = Pattern.compile("href=\"([^\"]+)\"", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Files which are created by the repository or by aether on deployment.
+     */
+    private static final String[] IGNORED_SUFFIXES = { ".md5", ".sha1", ".sha256", ".sha512" };
+
+    private boolean debug;
+
+    private String user;
+
+    private Secret password;
+
+    private TaskListener listener;
+
+    /**
+     * The default constructor.
+     */
+    public ListArtifactsNexusOSS(TaskListener listener, final String user, final Secret password, final boolean debug) {
+        super();
+        this.debug = debug;
+        this.user = user;
+        this.password = password;
+        this.listener = listener;
+    }
+
+    /**
+     * List the files of a version in a Nexus OSS repo using its directory index.
+     *
+     * @see org.jenkinsci.plugins.artifactpromotion.IListArtifacts#listAttachedArtifacts(org.eclipse.aether.repository.RemoteRepository, org.eclipse.aether.artifact.Artifact)
+     */
+    public List<Artifact> listAttachedArtifacts(final RemoteRepository stagingRepo, final Artifact artifact)
+            throws IllegalStateException {
+
+        String baseURL = stagingRepo.getUrl().endsWith(DELI) ? stagingRepo.getUrl() : stagingRepo.getUrl() + DELI;
+        String requestURL = baseURL + artifact.getGroupId().replace(".", DELI) + DELI
+                + artifact.getArtifactId() + DELI + artifact.getVersion() + DELI;
+
+        if (debug) listener.getLogger().println("Listing URL is: [" + requestURL + "]");
+
+        List<String> fileNames = list(stagingRepo, requestURL, false);
+
+        String prefix = artifact.getArtifactId() + "-" + artifact.getVersion();
+        List<Artifact> artifacts = new ArrayList<Artifact>();
+        for (String fileName : fileNames) {
+            Artifact attached = toArtifact(artifact, prefix, fileName);
+            if (attached != null) {
+                if (debug) listener.getLogger().println("Found attached artifact: " + attached);
+                artifacts.add(attached);
+            }
+        }
+        return artifacts;
+    }
+
+    /**
+     * Lists the names of the files or of the sub directories of a directory
+     * in the repository.
+     *
+     * @param requestURL - the URL of the directory, ending with a slash.
+     * @param directories - true to list the sub directories instead of the files.
+     */
+    List<String> list(RemoteRepository repository, String requestURL, boolean directories) {
+        return "file".equals(repository.getProtocol())
+                ? listDirectory(requestURL, directories) : listIndexPage(requestURL, directories);
+    }
+
+    private List<String> listDirectory(String requestURL, boolean directories) {
+        File[] files = new File(URI.create(requestURL)).listFiles();
+        if (files == null) {
+            throw new IllegalStateException("The directory doesn't exist: " + requestURL);
+        }
+        List<String> fileNames = new ArrayList<String>(files.length);
+        for (File file : files) {
+            if (directories ? file.isDirectory() : file.isFile()) {
+                fileNames.add(file.getName());
+            }
+        }
+        return fileNames;
+    }
+
+    private List<String> listIndexPage(String requestURL, boolean directories) {
+
+        HttpGet request = new HttpGet(requestURL);
+        request.setHeader("Accept", "text/html");
+        String auth = RemoteRepositoryAccess.getAuthorization(this.user, this.password);
+        if (auth != null) {
+            request.setHeader("Authorization", auth);
+        }
+
+        PooledHttpClient.Response response;
+        try {
+            response = PooledHttpClient.execute(request);
+        } catch (IOException e) {
+            throw new IllegalStateException("The directory can't be listed - request failed: "
+                    + e.getMessage(), e);
+        }
+
+        int statusCode = response.getStatus();
+
+        if (debug) listener.getLogger().println("Status code is: " + statusCode);
+
+        if (statusCode == 401) {
+            throw new IllegalStateException("Invalid Username or Password while accessing staging repository.");
+        } else if (statusCode != 200) {
+            throw new IllegalStateException("The directory can't be listed - status code is: " + statusCode);
+        }
+
+        Set<String> fileNames = new LinkedHashSet<String>();
+        Matcher matcher = HREF.matcher(response.getBody());
+        while (matcher.find()) {
+            String link = matcher.group(1);
+            if (link.endsWith(DELI) != directories) {
+                continue;
+            }
+            String resolved;
+            try {
+                resolved = URI.create(requestURL).resolve(link).toString();
+            } catch (IllegalArgumentException e) {
+                continue;
+            }
+            if (!resolved.startsWith(requestURL) || resolved.length() == requestURL.length()) {
+                // a link to the parent directory or to another page
+                continue;
+            }
+            String name = resolved.substring(requestURL.length());
+            if (directories) {
+                name = name.substring(0, name.length() - 1);
+            }
+            if (name.indexOf('/') < 0 && name.indexOf('?') < 0) {
+                fileNames.add(name);
+            }
+        }
+        return new ArrayList<String>(fileNames);
+    }
+
+    /**
+     * Maps a file name like artifactId-version[-classifier].extension to an
+     * artifact. Returns null for checksums and files of other artifacts.
+     */
+    private static Artifact toArtifact(Artifact artifact, String prefix, String fileName) {
+        if (!fileName.startsWith(prefix) || fileName.length() == prefix.length()) {
+            return null;
+        }
+        for (String suffix : IGNORED_SUFFIXES) {
+            if (fileName.endsWith(suffix)) {
+                return null;
+            }
+        }
+        String rest = fileName.substring(prefix.length());
+        String classifier = "";
+        if (rest.charAt(0) == '-') {
+            int dot = rest.indexOf('.');
+            if (dot < 0) {
+                return null;
+            }
+            classifier = rest.substring(1, dot);
+            rest = rest.substring(dot);
+        }
+        if (rest.charAt(0) != '.' || rest.length() == 1) {
+            return null;
+        }
+        return new DefaultArtifact(artifact.getGroupId(), artifact.getArtifactId(), classifier,
+                rest.substring(1), artifact.getVersion());
+    }
+
+}
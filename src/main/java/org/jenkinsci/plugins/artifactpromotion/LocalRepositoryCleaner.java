@@ -0,0 +1,186 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Halil-Cem Guersoy and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.artifactpromotion;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.eclipse.aether.AbstractRepositoryListener;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositoryEvent;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.util.listener.ChainedRepositoryListener;
+
+/**
+ * Records the files a promotion writes into its local repository and
+ * deletes exactly these files afterwards. Files which were in the local
+ * repository before the promotion are kept.
+ */
+public class LocalRepositoryCleaner extends AbstractRepositoryListener {
+
+    /**
+     * Files maintained by aether next to the artifacts of a directory.
+     */
+    private static final String[] BOOKKEEPING_FILES = { "_remote.repositories", "resolver-status.properties" };
+
+    private static final String[] SIDE_FILE_SUFFIXES = { ".sha1", ".md5", ".lastUpdated" };
+
+    private final File basedir;
+
+    private final Set<File> files = Collections.synchronizedSet(new LinkedHashSet<File>());
+
+    private long deletedBytes;
+
+    private LocalRepositoryCleaner(File basedir) {
+        this.basedir = basedir.getAbsoluteFile();
+    }
+
+    /**
+     * Registers a new cleaner as repository listener of the session.
+     *
+     * @return the cleaner of the session.
+     */
+    public static LocalRepositoryCleaner install(DefaultRepositorySystemSession session) {
+        LocalRepositoryCleaner cleaner = new LocalRepositoryCleaner(
+                session.getLocalRepository().getBasedir());
+        session.setRepositoryListener(session.getRepositoryListener() == null ? cleaner
+                : ChainedRepositoryListener.newInstance(session.getRepositoryListener(), cleaner));
+        session.getData().set(LocalRepositoryCleaner.class, cleaner);
+        return cleaner;
+    }
+
+    /**
+     * Records a file written into the local repository outside of aether,
+     * e.g. a file linked from the {@link AgentArtifactCache}.
+     */
+    public static void track(RepositorySystemSession session, File file) {
+        Object cleaner = session.getData().get(LocalRepositoryCleaner.class);
+        if (cleaner instanceof LocalRepositoryCleaner) {
+            ((LocalRepositoryCleaner) cleaner).add(file);
+        }
+    }
+
+    @Override
+    public void artifactDownloaded(RepositoryEvent event) {
+        add(event.getFile());
+    }
+
+    @Override
+    public void metadataDownloaded(RepositoryEvent event) {
+        add(event.getFile());
+    }
+
+    @Override
+    public void metadataDeployed(RepositoryEvent event) {
+        // the merged metadata of the release repository is written into the local repository
+        add(event.getFile());
+    }
+
+    private void add(File file) {
+        if (file != null && file.getAbsolutePath().startsWith(basedir.getPath() + File.separator)) {
+            files.add(file.getAbsoluteFile());
+        }
+    }
+
+    /**
+     * Deletes the recorded files together with their checksum files and
+     * removes directories which are empty then.
+     *
+     * @return the number of deleted files.
+     */
+    public int cleanup() throws IOException {
+        int deleted = 0;
+        Set<File> directories = new LinkedHashSet<File>();
+        synchronized (files) {
+            for (File file : files) {
+                deleted += delete(file);
+                for (String suffix : SIDE_FILE_SUFFIXES) {
+                    deleted += delete(new File(file.getPath() + suffix));
+                }
+                directories.add(file.getParentFile());
+            }
+            files.clear();
+        }
+        for (File directory : directories) {
+            removeIfUnused(directory);
+        }
+        return deleted;
+    }
+
+    /**
+     * @return the number of bytes freed by {@link #cleanup()}.
+     */
+    public long getDeletedBytes() {
+        return deletedBytes;
+    }
+
+    private int delete(File file) throws IOException {
+        if (!file.isFile()) {
+            return 0;
+        }
+        long length = file.length();
+        if (!file.delete()) {
+            throw new IOException("Unable to delete " + file);
+        }
+        deletedBytes += length;
+        return 1;
+    }
+
+    /**
+     * Deletes a directory which only contains aether bookkeeping files and
+     * continues with its parents up to the local repository.
+     */
+    private void removeIfUnused(File directory) throws IOException {
+        while (directory != null && !directory.equals(basedir)) {
+            String[] names = directory.list();
+            if (names == null) {
+                return;
+            }
+            for (String name : names) {
+                if (!isBookkeeping(name)) {
+                    return;
+                }
+            }
+            for (String name : names) {
+                delete(new File(directory, name));
+            }
+            if (!directory.delete()) {
+                return;
+            }
+            directory = directory.getParentFile();
+        }
+    }
+
+    private static boolean isBookkeeping(String name) {
+        for (String bookkeeping : BOOKKEEPING_FILES) {
+            if (bookkeeping.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
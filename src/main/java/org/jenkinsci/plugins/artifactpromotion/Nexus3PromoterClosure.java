@@ -0,0 +1,234 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Halil-Cem Guersoy and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.artifactpromotion;
+
+import hudson.model.TaskListener;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONException;
+import net.sf.json.JSONObject;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.utils.URIBuilder;
+import org.eclipse.aether.artifact.Artifact;
+import org.jenkinsci.plugins.artifactpromotion.exception.PromotionException;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Promotes artifacts on a Nexus Repository Manager 3 server side. The
+ * components are searched by their coordinates in the staging repository and
+ * moved into the release repository using the staging REST API, so no bytes
+ * pass the Jenkins node.
+ */
+public class Nexus3PromoterClosure implements Serializable, IPromotorClosure {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The path segment of Nexus 3 repository URLs in front of the repository name.
+     */
+    private static final String REPOSITORY_PATH = "/repository/";
+
+    private static final String SEARCH_PATH = "/service/rest/v1/search";
+
+    private static final String MOVE_PATH = "/service/rest/v1/staging/move/";
+
+    private PromotionRequest promotion;
+    private TaskListener listener;
+
+    /**
+     * @param listener
+     * @param promotion - the promotion request, its release user needs the privilege to move
+     *                    components between both repositories and skip deletion must be false
+     */
+    public Nexus3PromoterClosure(TaskListener listener, PromotionRequest promotion) {
+        super();
+
+        this.listener = listener;
+        this.promotion = promotion;
+    }
+
+    /* (non-Javadoc)
+     * @see org.jenkinsci.plugins.artifactpromotion.IPromotorClosure#promote()
+     */
+    public PromotionMetrics promote() throws PromotionException {
+
+        this.listener.getLogger().println("Started with server side promotion");
+
+        if (promotion.isSkipDeletion()) {
+            throw new PromotionException("Nexus 3 moves the components into the release repository, "
+                    + "the staging copy can't be kept. Untick 'Skip deletion' to promote with Nexus 3.");
+        }
+
+        String stagingURL = promotion.getToken(PromotionBuildTokens.STAGING_REPOSITORY);
+        String releaseURL = promotion.getToken(PromotionBuildTokens.RELEASE_REPOSITORY);
+        String serverURL = getServerURL(stagingURL);
+        if (!serverURL.equals(getServerURL(releaseURL))) {
+            throw new PromotionException("Staging and release repository have to be on the same Nexus 3 server.");
+        }
+        String stagingRepo = getRepositoryName(stagingURL);
+        String releaseRepo = getRepositoryName(releaseURL);
+
+        List<Artifact> coordinates = NexusOSSPromoterClosure.getCoordinates(promotion);
+        PromotionMetrics metrics = new PromotionMetrics();
+        metrics.setArtifacts(coordinates.size());
+        long start = System.currentTimeMillis();
+        // a failed component doesn't stop the others, all failures are reported at the end
+        Map<Artifact, String> failures = new LinkedHashMap<Artifact, String>();
+        for (Artifact coordinate : coordinates) {
+            long moveStart = System.currentTimeMillis();
+            try {
+                promoteComponent(serverURL, stagingRepo, releaseRepo, coordinate);
+            } catch (PromotionException e) {
+                failures.put(coordinate, e.getMessage());
+                this.listener.getLogger().println("[FAILURE] " + coordinate + ": " + e.getMessage());
+            } finally {
+                // the move is the deployment into the release repository
+                metrics.addDeployTime(moveStart);
+                metrics.addArtifactTime(moveStart);
+            }
+        }
+        if (promotion.isDebug()) this.listener.getLogger().println("HTTP " + PooledHttpClient.describeStats());
+
+        metrics.setFailures(failures.size());
+        metrics.setPromotionTime(start);
+        if (!failures.isEmpty()) {
+            throw new PromotionException(NexusOSSPromoterClosure.describeFailures(failures, coordinates.size()))
+                    .setMetrics(metrics);
+        }
+        return metrics;
+    }
+
+    private void promoteComponent(String serverURL, String stagingRepo, String releaseRepo,
+            Artifact coordinate) throws PromotionException {
+
+        String gav = coordinate.getGroupId() + ":" + coordinate.getArtifactId() + ":" + coordinate.getVersion();
+
+        if (search(serverURL, stagingRepo, coordinate) == 0) {
+            if (search(serverURL, releaseRepo, coordinate) > 0) {
+                this.listener.getLogger().println(gav + " has already been promoted to " + releaseRepo);
+                return;
+            }
+            throw new PromotionException("Could not find " + gav + " in repository " + stagingRepo);
+        }
+
+        this.listener.getLogger().println("Moving " + gav + " from " + stagingRepo + " to " + releaseRepo);
+        HttpPost request = new HttpPost(query(serverURL + MOVE_PATH + releaseRepo, stagingRepo, coordinate));
+        request.setHeader("Content-Type", "application/json");
+        String body = execute(request, "move " + gav);
+        if (promotion.isDebug()) this.listener.getLogger().println("Move result: " + body);
+        this.listener.getLogger().println("Successfully moved " + gav + " to repository " + releaseRepo);
+    }
+
+    /**
+     * @return the number of components matching the coordinates in the repository.
+     */
+    private int search(String serverURL, String repository, Artifact coordinate)
+            throws PromotionException {
+        String body = execute(new HttpGet(query(serverURL + SEARCH_PATH, repository, coordinate)),
+                "search in " + repository);
+        try {
+            JSONArray items = JSONObject.fromObject(body).optJSONArray("items");
+            int count = items == null ? 0 : items.size();
+            if (promotion.isDebug()) this.listener.getLogger().println("Found " + count + " components in " + repository);
+            return count;
+        } catch (JSONException e) {
+            throw new PromotionException("Unexpected search result from Nexus: " + body, e);
+        }
+    }
+
+    private URI query(String url, String repository, Artifact coordinate) throws PromotionException {
+        try {
+            URI query = new URIBuilder(url)
+                    .addParameter("repository", repository)
+                    .addParameter("maven.groupId", coordinate.getGroupId())
+                    .addParameter("maven.artifactId", coordinate.getArtifactId())
+                    .addParameter("maven.baseVersion", coordinate.getBaseVersion())
+                    .build();
+            if (promotion.isDebug()) this.listener.getLogger().println("Request URL is: [" + query + "]");
+            return query;
+        } catch (URISyntaxException e) {
+            throw new PromotionException("Invalid Nexus 3 URL: " + url, e);
+        }
+    }
+
+    private String execute(HttpRequestBase request, String action) throws PromotionException {
+        request.setHeader("Accept", "application/json");
+        String auth = RemoteRepositoryAccess.getAuthorization(promotion.getReleaseUser(), promotion.getReleasePassword());
+        if (auth != null) {
+            request.setHeader("Authorization", auth);
+        }
+
+        PooledHttpClient.Response response;
+        try {
+            response = PooledHttpClient.execute(request);
+        } catch (IOException e) {
+            throw new PromotionException("Could not " + action + ": " + e.getMessage(), e);
+        }
+        int statusCode = response.getStatus();
+
+        if (promotion.isDebug()) this.listener.getLogger().println("Status code is: " + statusCode);
+
+        if (statusCode == 401 || statusCode == 403) {
+            throw new PromotionException("Invalid Username or Password or missing privileges to " + action);
+        } else if (statusCode != 200) {
+            throw new PromotionException("Could not " + action + " - status code is: " + statusCode + " "
+                    + response.getBody());
+        }
+        return response.getBody();
+    }
+
+    /**
+     * @return the base URL of the Nexus 3 server, e.g. http://nexus:8081 for
+     * http://nexus:8081/repository/releases/
+     */
+    static String getServerURL(String repositoryURL) throws PromotionException {
+        int index = repositoryURL == null ? -1 : repositoryURL.indexOf(REPOSITORY_PATH);
+        if (index < 0) {
+            throw new PromotionException("Not a Nexus 3 repository URL: " + repositoryURL);
+        }
+        return repositoryURL.substring(0, index);
+    }
+
+    /**
+     * @return the name of the repository, e.g. releases for
+     * http://nexus:8081/repository/releases/
+     */
+    static String getRepositoryName(String repositoryURL) throws PromotionException {
+        String name = repositoryURL.substring(getServerURL(repositoryURL).length() + REPOSITORY_PATH.length());
+        int end = name.indexOf('/');
+        name = end < 0 ? name : name.substring(0, end);
+        if (name.length() == 0) {
+            throw new PromotionException("Not a Nexus 3 repository URL: " + repositoryURL);
+        }
+        return name;
+    }
+
+}
@@ -22,164 +22,739 @@
  */
 package org.jenkinsci.plugins.artifactpromotion;
 
+import hudson.Util;
 import hudson.model.TaskListener;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
 import hudson.util.Secret;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositoryCache;
 import org.eclipse.aether.RepositorySystem;
 import org.eclipse.aether.RepositorySystemSession;
 import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
 import org.eclipse.aether.deployment.DeployResult;
 import org.eclipse.aether.deployment.DeploymentException;
 import org.eclipse.aether.repository.RemoteRepository;
 import org.eclipse.aether.resolution.ArtifactResolutionException;
+import org.eclipse.aether.transfer.ArtifactNotFoundException;
 import org.jenkinsci.plugins.artifactpromotion.exception.PromotionException;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class NexusOSSPromoterClosure implements Serializable, IPromotorClosure {
 
     private static final long serialVersionUID = 1L;
 
-    private String localRepositoryURL;
-    private Map<PromotionBuildTokens, String> expandedTokens;
-    private String releaseUser;
-    private Secret releasePassword;
-    private String stagingUser;
-    private Secret stagingPassword;
-    private boolean skipDeletion;
+    /**
+     * The checksums compared to detect artifacts which are already promoted.
+     */
+    private static final String[] CHECKSUM_ALGORITHMS = { "sha1", "sha256" };
+
+    /**
+     * The agent system property naming the RAM backed file system used for
+     * small artifacts.
+     */
+    private static final String MEMORY_DIRECTORY_PROPERTY = NexusOSSPromoterClosure.class.getName()
+            + ".memoryDirectory";
+
+    private static final String DEFAULT_MEMORY_DIRECTORY = "/dev/shm";
+
+    /**
+     * The delay before the first retry in ms, it grows with every retry. Not
+     * final, so the tests don't have to wait.
+     */
+    static long retryDelay = Long.getLong(NexusOSSPromoterClosure.class.getName()
+            + ".retryDelay", 5000);
+
+    private PromotionRequest request;
     private TaskListener listener;
-    private boolean debug;
 
+    /**
+     * The session of the in-memory local repository, only set on the agent.
+     */
+    private transient RepositorySystemSession memorySession;
+
+    /**
+     * The metrics of the running promotion, only set on the agent.
+     */
+    private transient PromotionMetrics metrics;
 
     /**
-     * @param localRepositoryURL
      * @param listener
-     * @param expandedTokens
-     * @param releaseUser
-     * @param releasePassword
-     * @param stagingUser
-     * @param stagingPassword
-     * @param skipDeletion - if true, skip the deletion of the artifact out of the source repo
-     */
-    public NexusOSSPromoterClosure(
-            TaskListener listener,
-            String localRepositoryURL,
-            Map<PromotionBuildTokens, String> expandedTokens,
-            String releaseUser, Secret releasePassword,
-            String stagingUser, Secret stagingPassword,
-            boolean skipDeletion, boolean debug) {
+     * @param request - the repositories, credentials and options of the promotion
+     */
+    public NexusOSSPromoterClosure(TaskListener listener, PromotionRequest request) {
         super();
 
-        this.expandedTokens = expandedTokens;
         this.listener = listener;
-        this.releaseUser = releaseUser;
-        this.releasePassword = releasePassword;
-        this.stagingUser = stagingUser;
-        this.stagingPassword = stagingPassword;
-        this.localRepositoryURL = localRepositoryURL;
-        this.skipDeletion = skipDeletion;
-        this.debug = debug;
+        this.request = request;
     }
 
     /* (non-Javadoc)
      * @see org.jenkinsci.plugins.artifactpromotion.IPromotorClosure#promote()
      */
-    public void promote() throws PromotionException {
+    public PromotionMetrics promote() throws PromotionException {
+        // the output of the transfer threads is written to the console in the background
+        TaskListener console = this.listener;
+        AsyncConsole async = new AsyncConsole(console.getLogger());
+        this.listener = async;
+        RepositoryCache cache = AgentSessionCache.acquire(getSessionKey());
+        try {
+            return doPromote(cache);
+        } finally {
+            AgentSessionCache.release(cache);
+            async.close();
+            this.listener = console;
+        }
+    }
+
+    private PromotionMetrics doPromote(RepositoryCache cache) throws PromotionException {
 
         this.listener.getLogger().println("Started with promotion");
 
-        AetherInteraction aether = new AetherInteraction(this.listener);
+        long start = System.currentTimeMillis();
+        metrics = new PromotionMetrics();
+        AetherInteraction aether = new AetherInteraction(this.listener, metrics);
         RepositorySystem system = aether.getNewRepositorySystem();
-        RepositorySystemSession session = aether.getRepositorySystemSession(
-                system, localRepositoryURL);
+        DefaultRepositorySystemSession session = aether.getRepositorySystemSession(
+                system, request.getLocalRepositoryURL(), cache);
+        LocalRepositoryCleaner cleaner = request.isCleanupLocalRepository() ? LocalRepositoryCleaner.install(session) : null;
+        File memoryRepository = createMemoryRepository();
+        if (memoryRepository != null) {
+            memorySession = aether.getRepositorySystemSession(system, memoryRepository.getPath(),
+                    session.getCache());
+        }
 
         RemoteRepository stagingRepository =
-                aether.getRepository(stagingUser,
-                          stagingPassword,
+                aether.getRepository(request.getStagingUser(),
+                          request.getStagingPassword(),
                           "stagingrepo",
-                          this.expandedTokens
-                                    .get(PromotionBuildTokens.STAGING_REPOSITORY));
-
-        ArtifactWrapper artifact = getArtifact(aether, system, session,
-                stagingRepository);
-        if (artifact == null) {
-            throw new PromotionException(
-                    "Could not fetch artifacts for promotion");
-        }
+                          request.getToken(PromotionBuildTokens.STAGING_REPOSITORY));
+        RemoteRepository releaseRepository =
+                aether.getRepository(request.getReleaseUser(),
+                          request.getReleasePassword(),
+                          "releaserepo",
+                          request.getToken(PromotionBuildTokens.RELEASE_REPOSITORY));
 
-        // upload the artifact and its pom to the release repos
-        DeployResult result = deployPromotionArtifact(aether, system, session,
-                artifact);
-        if (result == null) {
-            throw new PromotionException(
-                    "Could not deploy artifacts to release repository");
+        List<Artifact> coordinates = getCoordinates(request);
+        metrics.setArtifacts(coordinates.size());
+        Map<Artifact, String> failures;
+        try {
+            failures = promoteAll(aether, system, session,
+                    stagingRepository, releaseRepository, coordinates);
+        } finally {
+            cleanupLocalRepositories(cleaner, memoryRepository);
         }
 
-        if (skipDeletion == false) {
-            deleteArtifact(stagingRepository, artifact);
+        if (request.isSkipDeletion() == false && request.isDeferDeletion()) {
+            Collection<Artifact> versions = getVersionsToDelete(coordinates, failures);
+            for (Artifact artifact : versions) {
+                metrics.addDeferredDeletion(artifact.getGroupId(), artifact.getArtifactId(), artifact.getVersion());
+            }
+            this.listener.getLogger().println("Deletion of " + versions.size()
+                    + " versions from source repo is deferred");
+        } else if (request.isSkipDeletion() == false) {
+            long deleteStart = System.currentTimeMillis();
+            deleteArtifacts(stagingRepository, getVersionsToDelete(coordinates, failures));
+            metrics.addDeleteTime(deleteStart);
         } else {
             this.listener
                     .getLogger()
                     .println(
                             "Skipping deletion of artifact from source repo as requested by user");
         }
+
+        metrics.setFailures(failures.size());
+        metrics.setPromotionTime(start);
+        if (!failures.isEmpty()) {
+            throw new PromotionException(describeFailures(failures, coordinates.size())).setMetrics(metrics);
+        }
+        return metrics;
+    }
+
+    /**
+     * @return a message listing the coordinates which could not be promoted.
+     */
+    static String describeFailures(Map<Artifact, String> failures, int total) {
+        if (total == 1) {
+            return failures.values().iterator().next();
+        }
+        StringBuilder message = new StringBuilder();
+        message.append(failures.size()).append(" of ").append(total).append(" artifacts could not be promoted:");
+        for (Map.Entry<Artifact, String> failure : failures.entrySet()) {
+            message.append("\n  ").append(failure.getKey()).append(": ").append(failure.getValue());
+        }
+        return message.toString();
+    }
+
+    /**
+     * Creates a local repository on a RAM backed file system for the small
+     * artifacts, so they never touch the disk.
+     *
+     * @return the directory of the repository or null if it is disabled or not available.
+     */
+    private File createMemoryRepository() {
+        if (request.getMemoryThreshold() <= 0) {
+            return null;
+        }
+        File root = new File(System.getProperty(MEMORY_DIRECTORY_PROPERTY, DEFAULT_MEMORY_DIRECTORY));
+        if (!root.isDirectory()) {
+            this.listener.getLogger().println("No RAM backed file system found at " + root
+                    + ", small artifacts are written to the local repository");
+            return null;
+        }
+        try {
+            return Files.createTempDirectory(root.toPath(), "artifact-promotion").toFile();
+        } catch (IOException e) {
+            this.listener.getLogger().println("Could not create in-memory repository in " + root
+                    + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Deletes the in-memory repository and, if requested, the files this
+     * promotion wrote into the local repository.
+     */
+    private void cleanupLocalRepositories(LocalRepositoryCleaner cleaner, File memoryRepository) {
+        if (memoryRepository != null) {
+            try {
+                Util.deleteRecursive(memoryRepository);
+            } catch (IOException e) {
+                this.listener.getLogger().println("Could not delete in-memory repository "
+                        + memoryRepository + ": " + e.getMessage());
+            }
+        }
+        if (cleaner != null) {
+            try {
+                int deleted = cleaner.cleanup();
+                this.listener.getLogger().println("Removed " + deleted + " files ("
+                        + cleaner.getDeletedBytes() / 1024 + " KB) written by this promotion from the local repository");
+            } catch (IOException e) {
+                this.listener.getLogger().println("Could not clean up the local repository: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return the key of the cached session, built from the repositories and their credentials.
+     */
+    private String getSessionKey() {
+        return AgentSessionCache.getKey(
+                request.getToken(PromotionBuildTokens.STAGING_REPOSITORY),
+                AgentSessionCache.hashCredentials(request.getStagingUser(),
+                        Secret.toString(request.getStagingPassword())),
+                request.getToken(PromotionBuildTokens.RELEASE_REPOSITORY),
+                AgentSessionCache.hashCredentials(request.getReleaseUser(),
+                        Secret.toString(request.getReleasePassword())));
+    }
+
+    /**
+     * Builds the list of artifacts to promote. If a batch of coordinates is
+     * given, it is used instead of the single artifact coordinates.
+     *
+     * @param request the promotion request with the expanded tokens of the build step
+     * @return the coordinates of all artifacts to promote
+     * @throws PromotionException thrown then a coordinate can't be parsed
+     */
+    static List<Artifact> getCoordinates(PromotionRequest request)
+            throws PromotionException {
+        List<Artifact> coordinates = new ArrayList<Artifact>();
+        String batch = request.getToken(PromotionBuildTokens.ARTIFACTS);
+        if (batch != null && batch.trim().length() > 0) {
+            for (String coordinate : batch.trim().split("[,\\s]+")) {
+                try {
+                    coordinates.add(new DefaultArtifact(coordinate));
+                } catch (IllegalArgumentException e) {
+                    throw new PromotionException("Invalid artifact coordinates: " + coordinate, e);
+                }
+            }
+        } else {
+            coordinates.add(new DefaultArtifact(
+                    request.getToken(PromotionBuildTokens.GROUP_ID),
+                    request.getToken(PromotionBuildTokens.ARTIFACT_ID),
+                    request.getToken(PromotionBuildTokens.CLASSIFIER),
+                    request.getToken(PromotionBuildTokens.EXTENSION),
+                    request.getToken(PromotionBuildTokens.VERSION)));
+        }
+        return coordinates;
+    }
+
+    /**
+     * Promotes all given artifacts. A single artifact is promoted in the
+     * calling thread, a batch is promoted on a bounded pool of workers.
+     *
+     * @return the artifacts which could not be promoted together with the reason
+     */
+    private Map<Artifact, String> promoteAll(final AetherInteraction aether,
+            final RepositorySystem system, final RepositorySystemSession session,
+            final RemoteRepository stagingRepo, final RemoteRepository releaseRepo,
+            List<Artifact> coordinates) throws PromotionException {
+
+        Map<Artifact, String> failures = new LinkedHashMap<Artifact, String>();
+
+        if (coordinates.size() == 1) {
+            try {
+                promoteWithRetries(aether, system, session, stagingRepo, releaseRepo, coordinates.get(0));
+            } catch (PromotionException e) {
+                failures.put(coordinates.get(0), e.getMessage());
+            }
+            return failures;
+        }
+
+        int parallelism = request.getParallelism() > 0 ? request.getParallelism()
+                : ArtifactPromotionHelper.DEFAULT_PARALLELISM;
+        int threads = Math.min(parallelism, coordinates.size());
+        this.listener.getLogger().println("Promoting " + coordinates.size() + " artifacts using "
+                + threads + " parallel workers");
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+                new NamingThreadFactory(new DaemonThreadFactory(), "artifact-promotion"));
+        try {
+            List<Future<Void>> results = new ArrayList<Future<Void>>(coordinates.size());
+            for (final Artifact coordinate : coordinates) {
+                results.add(executor.submit(new Callable<Void>() {
+                    public Void call() throws PromotionException {
+                        promoteWithRetries(aether, system, session, stagingRepo, releaseRepo, coordinate);
+                        return null;
+                    }
+                }));
+            }
+            for (int i = 0; i < coordinates.size(); i++) {
+                Artifact coordinate = coordinates.get(i);
+                try {
+                    results.get(i).get();
+                    this.listener.getLogger().println("[SUCCESS] " + coordinate);
+                } catch (ExecutionException e) {
+                    failures.put(coordinate, e.getCause().getMessage());
+                    this.listener.getLogger().println("[FAILURE] " + coordinate + ": " + e.getCause().getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PromotionException("Promotion has been interrupted", e);
+        } finally {
+            executor.shutdownNow();
+        }
+        return failures;
+    }
+
+    /**
+     * Promotes an artifact and retries it after a failed transfer. A retry
+     * continues partial downloads kept in the local repository and skips
+     * the files which already reached the release repository, so only the
+     * missing bytes are transferred again. Uploads are repeated completely,
+     * as the repository servers don't accept partial uploads.
+     */
+    private void promoteWithRetries(AetherInteraction aether, RepositorySystem system,
+            RepositorySystemSession session, RemoteRepository stagingRepo,
+            RemoteRepository releaseRepo, Artifact coordinate) throws PromotionException {
+        long start = System.currentTimeMillis();
+        try {
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    promoteArtifact(aether, system, session, stagingRepo, releaseRepo, coordinate);
+                    return;
+                } catch (PromotionException e) {
+                    if (attempt > request.getRetries() || !isRetryable(e)) {
+                        throw e;
+                    }
+                    metrics.addRetry();
+                    long delay = retryDelay * attempt;
+                    this.listener.getLogger().println("Promotion of " + coordinate + " failed: " + e.getMessage()
+                            + ", retry " + attempt + " of " + request.getRetries() + " in " + delay / 1000 + "s");
+                    try {
+                        Thread.sleep(delay);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        throw e;
+                    }
+                }
+            }
+        } finally {
+            metrics.addArtifactTime(start);
+        }
+    }
+
+    /**
+     * @return false if the artifact doesn't exist, as a retry won't help then.
+     */
+    private static boolean isRetryable(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ArtifactNotFoundException) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Resolves a single artifact and its POM from the staging repository and
+     * deploys both to the release repository.
+     */
+    private void promoteArtifact(AetherInteraction aether, RepositorySystem system,
+            RepositorySystemSession session, RemoteRepository stagingRepo,
+            RemoteRepository releaseRepo, Artifact coordinate) throws PromotionException {
+
+        if (request.isPromoteAttached()) {
+            promoteAttachedArtifacts(aether, system, session, stagingRepo, releaseRepo, coordinate);
+            return;
+        }
+        if (isPromoted(session, stagingRepo, releaseRepo, coordinate)) {
+            if (isPom(coordinate) || isPromoted(session, stagingRepo, releaseRepo, getPom(coordinate))) {
+                return;
+            }
+            // an earlier attempt deployed the artifact but not its POM
+            promoteStreaming(aether, system, session, stagingRepo, releaseRepo,
+                    Collections.<Artifact>emptyList(), coordinate);
+            return;
+        }
+        if (request.isStreaming() && !ArtifactPromotionBuilder.POMTYPE.equals(coordinate.getExtension())) {
+            promoteStreaming(aether, system, session, stagingRepo, releaseRepo,
+                    Collections.singletonList(coordinate), coordinate);
+            return;
+        }
+
+        ArtifactWrapper artifact = getArtifact(aether, system, session,
+                stagingRepo, coordinate);
+
+        // upload the artifact and its pom to the release repos
+        deployPromotionArtifact(aether, system, session, releaseRepo, artifact);
+    }
+
+    /**
+     * Resolves all files of the version of an artifact from the staging
+     * repository with one request and deploys them with one request to the
+     * release repository, so all of them are transferred concurrently.
+     */
+    private void promoteAttachedArtifacts(AetherInteraction aether, RepositorySystem system,
+            RepositorySystemSession session, RemoteRepository stagingRepo,
+            RemoteRepository releaseRepo, Artifact coordinate) throws PromotionException {
+
+        this.listener.getLogger().println("Get all attached artifacts of " + coordinate.getGroupId() + ":"
+                + coordinate.getArtifactId() + ":" + coordinate.getVersion());
+        IListArtifacts lister = new ListArtifactsNexusOSS(this.listener, request.getStagingUser(),
+                request.getStagingPassword(), request.isDebug());
+        List<Artifact> attached;
+        try {
+            attached = lister.listAttachedArtifacts(stagingRepo, coordinate);
+        } catch (IllegalStateException e) {
+            throw new PromotionException("Could not list attached artifacts: " + e.getMessage(), e);
+        }
+        if (attached.isEmpty() && request.isResumed() && isPromoted(session, stagingRepo, releaseRepo,
+                getPom(coordinate))) {
+            return;
+        }
+        if (attached.isEmpty()) {
+            throw new PromotionException("No artifacts found for " + coordinate + " in " + stagingRepo.getUrl());
+        }
+
+        Artifact pomCoordinate = null;
+        List<Artifact> pending = new ArrayList<Artifact>(attached.size());
+        for (Artifact artifact : attached) {
+            if (pomCoordinate == null && isPom(artifact)) {
+                pomCoordinate = artifact;
+            } else if (!isPromoted(session, stagingRepo, releaseRepo, artifact)) {
+                pending.add(artifact);
+            }
+        }
+        if (pomCoordinate == null) {
+            throw new PromotionException("No POM found for " + coordinate + " in " + stagingRepo.getUrl());
+        }
+        if (pending.isEmpty()) {
+            if (attached.size() > 1 || isPromoted(session, stagingRepo, releaseRepo, pomCoordinate)) {
+                this.listener.getLogger().println("All attached artifacts of " + coordinate
+                        + " are already in the release repository");
+                return;
+            }
+            // a POM-only version, promote the POM itself
+            pending.add(pomCoordinate);
+        } else if (request.isStreaming()) {
+            promoteStreaming(aether, system, session, stagingRepo, releaseRepo, pending, coordinate);
+            return;
+        }
+
+        List<Artifact> requested = new ArrayList<Artifact>(pending);
+        if (!pending.contains(pomCoordinate)) {
+            requested.add(pomCoordinate);
+        }
+        List<Artifact> resolved;
+        try {
+            resolved = resolve(aether, system, session, stagingRepo, requested);
+        } catch (ArtifactResolutionException e) {
+            this.listener.getLogger().println(
+                    "Could not resolve artifact: " + e.getMessage());
+            throw new PromotionException(
+                    "Could not fetch artifacts for promotion", e);
+        }
+        List<Artifact> artifacts = resolved.subList(0, pending.size());
+        Artifact pom = resolved.get(resolved.size() - 1);
+
+        try {
+            aether.deployArtifacts(session, system, releaseRepo, artifacts, pom);
+        } catch (DeploymentException e) {
+            this.listener.getLogger().println(
+                    "Could not deploy artifact to " + releaseRepo
+                            + " using User " + request.getReleaseUser() + ":"
+                            + e.getMessage());
+            throw new PromotionException(
+                    "Could not deploy artifacts to release repository", e);
+        }
+    }
+
+    /**
+     * Pipes the artifacts from the staging to the release repository without
+     * a local copy. Only the POM is promoted by aether, as the deployment
+     * of the POM updates the metadata of the release repository.
+     */
+    private void promoteStreaming(AetherInteraction aether, RepositorySystem system,
+            RepositorySystemSession session, RemoteRepository stagingRepo,
+            RemoteRepository releaseRepo, List<Artifact> artifacts, Artifact coordinate) throws PromotionException {
+
+        StreamingTransfer transfer = new StreamingTransfer(this.listener, request.isDebug());
+        for (Artifact artifact : artifacts) {
+            long start = System.currentTimeMillis();
+            try {
+                long bytes = transfer.transfer(session, stagingRepo, releaseRepo, artifact);
+                metrics.addBytesDownloaded(bytes);
+                metrics.addBytesUploaded(bytes);
+            } catch (IOException e) {
+                this.listener.getLogger().println(
+                        "Could not stream artifact " + artifact + ": " + e.getMessage());
+                throw new PromotionException(
+                        "Could not stream artifacts to release repository", e);
+            } finally {
+                metrics.addDeployTime(start);
+            }
+        }
+
+        Artifact pom;
+        try {
+            pom = aether.getArtifact(memorySession != null ? memorySession : session, system, stagingRepo,
+                    coordinate.getGroupId(),
+                    coordinate.getArtifactId(),
+                    null, // POM doesn't have a classifier
+                    ArtifactPromotionBuilder.POMTYPE,
+                    coordinate.getVersion());
+        } catch (ArtifactResolutionException e) {
+            this.listener.getLogger().println(
+                    "Could not resolve artifact: " + e.getMessage());
+            throw new PromotionException(
+                    "Could not fetch artifacts for promotion", e);
+        }
+        try {
+            aether.deployArtifacts(session, system, releaseRepo, Collections.<Artifact>emptyList(), pom);
+        } catch (DeploymentException e) {
+            this.listener.getLogger().println(
+                    "Could not deploy artifact to " + releaseRepo
+                            + " using User " + request.getReleaseUser() + ":"
+                            + e.getMessage());
+            throw new PromotionException(
+                    "Could not deploy artifacts to release repository", e);
+        }
     }
 
     private ArtifactWrapper getArtifact(AetherInteraction aether,
             RepositorySystem system, RepositorySystemSession session,
-            RemoteRepository stagingRepo) {
+            RemoteRepository stagingRepo, Artifact coordinate) throws PromotionException {
 
         this.listener.getLogger().println("Get Artifact and corresponding POM");
+        // resolve both with one request, so they are downloaded concurrently
+        List<Artifact> requested = new ArrayList<Artifact>(2);
+        requested.add(coordinate);
+        if (!isPom(coordinate)) {
+            requested.add(getPom(coordinate));
+        }
         Artifact artifact = null;
         Artifact pom = null;
         try {
-            artifact = aether.getArtifact(session, system, stagingRepo,
-                    this.expandedTokens.get(PromotionBuildTokens.GROUP_ID),
-                    this.expandedTokens.get(PromotionBuildTokens.ARTIFACT_ID),
-                    this.expandedTokens.get(PromotionBuildTokens.CLASSIFIER),
-                    this.expandedTokens.get(PromotionBuildTokens.EXTENSION),
-                    this.expandedTokens.get(PromotionBuildTokens.VERSION));
-            pom = aether.getArtifact(session, system, stagingRepo,
-                    this.expandedTokens.get(PromotionBuildTokens.GROUP_ID),
-                    this.expandedTokens.get(PromotionBuildTokens.ARTIFACT_ID),
-                    null, // POM doesn't have a classifier
-                    ArtifactPromotionBuilder.POMTYPE,
-                    this.expandedTokens.get(PromotionBuildTokens.VERSION));
+            List<Artifact> resolved = resolve(aether, system, session, stagingRepo, requested);
+            artifact = resolved.get(0);
+            pom = resolved.get(resolved.size() - 1);
         } catch (ArtifactResolutionException e) {
             this.listener.getLogger().println(
                     "Could not resolve artifact: " + e.getMessage());
-            return null;
+            throw new PromotionException(
+                    "Could not fetch artifacts for promotion", e);
         }
 
         return new ArtifactWrapper(artifact, pom);
     }
 
-    private DeployResult deployPromotionArtifact(AetherInteraction aether, RepositorySystem system, RepositorySystemSession session,
-            ArtifactWrapper artifact) {
+    /**
+     * Resolves the artifacts from the staging repository. If the in-memory
+     * repository is enabled, POMs and artifacts up to the threshold are
+     * resolved into it and the others into the local repository.
+     *
+     * @return the resolved artifacts in the order of the request
+     */
+    private List<Artifact> resolve(AetherInteraction aether, RepositorySystem system,
+            RepositorySystemSession session, RemoteRepository stagingRepo, List<Artifact> requested)
+            throws ArtifactResolutionException {
+        if (memorySession == null) {
+            return aether.getArtifacts(session, system, stagingRepo, requested);
+        }
+        boolean[] inMemory = new boolean[requested.size()];
+        List<Artifact> small = new ArrayList<Artifact>();
+        List<Artifact> large = new ArrayList<Artifact>();
+        for (int i = 0; i < requested.size(); i++) {
+            inMemory[i] = isSmall(session, stagingRepo, requested.get(i));
+            (inMemory[i] ? small : large).add(requested.get(i));
+        }
+        List<Artifact> resolvedSmall = small.isEmpty() ? small
+                : aether.getArtifacts(memorySession, system, stagingRepo, small);
+        List<Artifact> resolvedLarge = large.isEmpty() ? large
+                : aether.getArtifacts(session, system, stagingRepo, large);
+        List<Artifact> resolved = new ArrayList<Artifact>(requested.size());
+        int s = 0;
+        int l = 0;
+        for (int i = 0; i < requested.size(); i++) {
+            resolved.add(inMemory[i] ? resolvedSmall.get(s++) : resolvedLarge.get(l++));
+        }
+        return resolved;
+    }
+
+    private boolean isSmall(RepositorySystemSession session, RemoteRepository stagingRepo, Artifact artifact) {
+        if (ArtifactPromotionBuilder.POMTYPE.equals(artifact.getExtension())) {
+            return true;
+        }
+        try {
+            long length = RemoteRepositoryAccess.getContentLength(session, stagingRepo, artifact);
+            return length >= 0 && length <= request.getMemoryThreshold() * 1024L;
+        } catch (IOException e) {
+            if (request.isDebug()) this.listener.getLogger().println("Could not determine the size of " + artifact
+                    + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private DeployResult deployPromotionArtifact(AetherInteraction aether, RepositorySystem system,
+            RepositorySystemSession session, RemoteRepository releaseRepository,
+            ArtifactWrapper artifact) throws PromotionException {
 
-        RemoteRepository releaseRepository =
-                    aether.getRepository(releaseUser,
-                                              releasePassword,
-                                              "releaserepo",
-                                              this.expandedTokens
-                                                        .get(PromotionBuildTokens.RELEASE_REPOSITORY));
         try {
             return aether.deployArtifact(session, system, releaseRepository,
                     artifact.getArtifact(), artifact.getPom());
         } catch (DeploymentException e) {
             this.listener.getLogger().println(
                     "Could not deploy artifact to " + releaseRepository
-                            + " using User " + releaseUser + ":"
+                            + " using User " + request.getReleaseUser() + ":"
                             + e.getMessage());
-            return null;
+            throw new PromotionException(
+                    "Could not deploy artifacts to release repository", e);
+        }
+    }
+
+    /**
+     * Selects the promoted versions to delete from the staging repository. As
+     * the whole version is removed, a version is only deleted once and only
+     * if none of its artifacts failed to be promoted.
+     */
+    private Collection<Artifact> getVersionsToDelete(List<Artifact> coordinates, Map<Artifact, String> failures) {
+        Map<String, Artifact> versions = new LinkedHashMap<String, Artifact>();
+        for (Artifact coordinate : coordinates) {
+            versions.put(getVersionKey(coordinate), coordinate);
+        }
+        for (Artifact failed : failures.keySet()) {
+            if (versions.remove(getVersionKey(failed)) != null) {
+                this.listener.getLogger().println("Skipping deletion of " + failed
+                        + " from source repo as its promotion has failed");
+            }
         }
+        return versions.values();
+    }
+
+    /**
+     * Deletes the versions from the staging repository.
+     */
+    private void deleteArtifacts(RemoteRepository aetherStagingRepo, Collection<Artifact> versions) {
+        IDeleteArtifact deleter = new DeleteArtifactNexusOSS(this.listener, request.getStagingUser(),
+                request.getStagingPassword(), request.isDebug());
+        for (Artifact artifact : versions) {
+            deleter.deleteArtifact(aetherStagingRepo, artifact);
+        }
+    }
+
+    /**
+     * Compares the checksums of an artifact in the staging and in the release
+     * repository. An artifact with identical content in both repositories
+     * doesn't have to be transferred again, e.g. then a promotion is re-run
+     * after a partial failure.
+     * <p>
+     * The result is deliberately not cached: a retry may have deployed the
+     * artifact in the meantime, so every attempt asks both repositories again.
+     * A resumed promotion also accepts an artifact which is in the release
+     * repository but no longer in the staging repository.
+     *
+     * @return true if the artifact is already in the release repository
+     */
+    private boolean isPromoted(RepositorySystemSession session, RemoteRepository stagingRepo,
+            RemoteRepository releaseRepo, Artifact artifact) {
+        try {
+            String releasedChecksum = null;
+            for (String algorithm : CHECKSUM_ALGORITHMS) {
+                String released = RemoteRepositoryAccess.getChecksum(session, releaseRepo, artifact, algorithm);
+                if (released == null) {
+                    continue;
+                }
+                releasedChecksum = algorithm + " " + released;
+                String staged = RemoteRepositoryAccess.getChecksum(session, stagingRepo, artifact, algorithm);
+                if (staged == null) {
+                    continue;
+                }
+                if (!released.equalsIgnoreCase(staged)) {
+                    if (request.isDebug()) this.listener.getLogger().println(artifact + " differs in the release repository");
+                    return false;
+                }
+                this.listener.getLogger().println("Skipping " + artifact
+                        + " as it is already in the release repository (" + algorithm + " " + released + ")");
+                return true;
+            }
+            // the run interrupted by the restart deleted it from staging after promoting it
+            if (releasedChecksum != null && request.isResumed()
+                    && !RemoteRepositoryAccess.exists(session, stagingRepo, artifact)) {
+                this.listener.getLogger().println("Skipping " + artifact + " as it is already in the release repository ("
+                        + releasedChecksum + ") and no longer staged");
+                return true;
+            }
+        } catch (IOException e) {
+            if (request.isDebug()) this.listener.getLogger().println("Could not compare checksums of " + artifact
+                    + ": " + e.getMessage());
+        }
+        return false;
+    }
+
+    private static Artifact getPom(Artifact artifact) {
+        return new DefaultArtifact(
+                artifact.getGroupId(),
+                artifact.getArtifactId(),
+                null, // POM doesn't have a classifier
+                ArtifactPromotionBuilder.POMTYPE,
+                artifact.getVersion());
+    }
+
+    private static boolean isPom(Artifact artifact) {
+        return artifact.getClassifier().length() == 0
+                && ArtifactPromotionBuilder.POMTYPE.equals(artifact.getExtension());
     }
 
-    private void deleteArtifact(RemoteRepository aetherStagingRepo,
-            ArtifactWrapper artifact) {
-        IDeleteArtifact deleter = new DeleteArtifactNexusOSS(this.listener, this.stagingUser,
-                this.stagingPassword, this.debug);
-        deleter.deleteArtifact(aetherStagingRepo, artifact.getArtifact());
+    private static String getVersionKey(Artifact artifact) {
+        return artifact.getGroupId() + ":" + artifact.getArtifactId() + ":" + artifact.getVersion();
     }
 
 }
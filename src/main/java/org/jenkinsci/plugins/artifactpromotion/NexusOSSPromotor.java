@@ -24,9 +24,6 @@ package org.jenkinsci.plugins.artifactpromotion;
 
 import hudson.Extension;
 import hudson.model.Descriptor;
-import hudson.remoting.VirtualChannel;
-
-import org.jenkinsci.plugins.artifactpromotion.exception.PromotionException;
 
 /**
  * Sonatype Nexus OSS specific {@link Promotor} implementation.
@@ -39,33 +36,13 @@ import org.jenkinsci.plugins.artifactpromotion.exception.PromotionException;
 public class NexusOSSPromotor extends AbstractPromotor {
 
 
-    /** This method calls the Nexus OSS promoter which is encapsulated into a 'closure' to make this
+    /** Creates the Nexus OSS promoter which is encapsulated into a 'closure' to make this
      * plugin run on slaves, too.
      *
-     * @see org.jenkinsci.plugins.artifactpromotion.Promotor#callPromotor(hudson.remoting.VirtualChannel)
+     * @see org.jenkinsci.plugins.artifactpromotion.AbstractPromotor#createClosure(PromotionRequest)
      */
-    public void callPromotor(VirtualChannel channel) throws PromotionException {
-
-        IPromotorClosure promotor = new NexusOSSPromoterClosure(
-                getListener(),
-                getLocalRepositoryURL(),
-                getExpandedTokens(),
-                getReleaseUser(),
-                getReleasePassword(),
-                getStagingUser(),
-                getStagingPassword(),
-                isSkipDeletion(),
-                isDebug());
-
-        RemotePromoter promotorTask = new RemotePromoter(promotor);
-
-        try {
-            channel.call(promotorTask);
-        } catch (Exception e) {
-            getListener().getLogger().println("Promotion could not be executed");
-            e.printStackTrace(getListener().getLogger());
-            throw new PromotionException("Promotion could not be executed: " + e.getMessage());
-        }
+    protected IPromotorClosure createClosure(PromotionRequest request) {
+        return new NexusOSSPromoterClosure(getListener(), request);
     }
 
     @SuppressWarnings("unchecked")
@@ -0,0 +1,236 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Halil-Cem Guersoy and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.artifactpromotion;
+
+import java.io.IOException;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * A HTTP client with a connection pool which is shared by all promotions
+ * running in the same JVM, e.g. on the same agent. Connections are kept
+ * alive between promotions and closed after being idle for a while.
+ * <p>
+ * Responses which are read by the caller ({@link #open(HttpUriRequest)})
+ * lease their connections from a second pool with the same limits. A
+ * streaming transfer keeps its download open while it uploads, if both
+ * shared a pool the downloads of a few parallel promotions could lease
+ * every connection to a host and starve the uploads to the same host.
+ * <p>
+ * The pool can be tuned with the system properties
+ * <code>org.jenkinsci.plugins.artifactpromotion.PooledHttpClient.maxPerRoute</code>,
+ * <code>...maxTotal</code> and <code>...idleTimeout</code> (seconds) of the agent JVM.
+ */
+public final class PooledHttpClient {
+
+    private static final String PREFIX = PooledHttpClient.class.getName() + ".";
+
+    private static final int MAX_PER_ROUTE = Integer.getInteger(PREFIX + "maxPerRoute", 8);
+
+    private static final int MAX_TOTAL = Integer.getInteger(PREFIX + "maxTotal", 32);
+
+    private static final long IDLE_TIMEOUT = Long.getLong(PREFIX + "idleTimeout", 60);
+
+    private static final int CONNECT_TIMEOUT = 10 * 1000;
+
+    private static final int SOCKET_TIMEOUT = 5 * 60 * 1000;
+
+    private static final PooledHttpClient INSTANCE = new PooledHttpClient();
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+
+    private final PoolingHttpClientConnectionManager streamingManager;
+
+    private final CloseableHttpClient client;
+
+    private final CloseableHttpClient streamingClient;
+
+    private final RequestConfig requestConfig;
+
+    private PooledHttpClient() {
+        requestConfig = RequestConfig.custom()
+                .setConnectTimeout(CONNECT_TIMEOUT)
+                .setConnectionRequestTimeout(CONNECT_TIMEOUT)
+                .setSocketTimeout(SOCKET_TIMEOUT)
+                .build();
+        connectionManager = newConnectionManager();
+        client = newClient(connectionManager);
+        streamingManager = newConnectionManager();
+        streamingClient = newClient(streamingManager);
+
+        Timer evictor = new Timer("artifact-promotion-connection-evictor", true);
+        evictor.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                for (PoolingHttpClientConnectionManager manager : new PoolingHttpClientConnectionManager[] {
+                        connectionManager, streamingManager }) {
+                    manager.closeExpiredConnections();
+                    manager.closeIdleConnections(IDLE_TIMEOUT, TimeUnit.SECONDS);
+                }
+            }
+        }, IDLE_TIMEOUT * 1000, IDLE_TIMEOUT * 1000);
+    }
+
+    private static PoolingHttpClientConnectionManager newConnectionManager() {
+        PoolingHttpClientConnectionManager manager = new PoolingHttpClientConnectionManager();
+        manager.setDefaultMaxPerRoute(MAX_PER_ROUTE);
+        manager.setMaxTotal(MAX_TOTAL);
+        return manager;
+    }
+
+    private CloseableHttpClient newClient(PoolingHttpClientConnectionManager manager) {
+        return HttpClients.custom()
+                .setConnectionManager(manager)
+                .setDefaultRequestConfig(requestConfig)
+                .build();
+    }
+
+    /**
+     * Executes a request using the shared pool. The response body is read
+     * completely, so the connection is returned to the pool before this
+     * method returns.
+     *
+     * @param request the request to execute.
+     * @return the status code and the body of the response.
+     * @throws IOException thrown then the request has failed.
+     */
+    public static Response execute(HttpUriRequest request) throws IOException {
+        CloseableHttpResponse response = INSTANCE.client.execute(request);
+        try {
+            HttpEntity entity = response.getEntity();
+            String body = entity == null ? "" : EntityUtils.toString(entity, "UTF-8");
+            return new Response(response.getStatusLine().getStatusCode(), body, response.getAllHeaders());
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Executes a request using the streaming pool without reading the
+     * response. The caller has to consume the entity and close the response
+     * to return the connection to the pool. This is used to stream artifacts,
+     * requests sent with {@link #execute(HttpUriRequest)} while the response
+     * is open don't compete for its connection.
+     *
+     * @param request the request to execute.
+     * @return the open response.
+     * @throws IOException thrown then the request has failed.
+     */
+    public static CloseableHttpResponse open(HttpUriRequest request) throws IOException {
+        return INSTANCE.streamingClient.execute(request);
+    }
+
+    /**
+     * @return a builder initialized with the timeouts of the pool, e.g. to
+     *         route a single request through a proxy.
+     */
+    public static RequestConfig.Builder newRequestConfig() {
+        return RequestConfig.copy(INSTANCE.requestConfig);
+    }
+
+    /**
+     * Closes the connections which aren't leased at the moment, e.g. after
+     * the agent lost the connection to the master.
+     */
+    public static void closeIdleConnections() {
+        INSTANCE.connectionManager.closeIdleConnections(0, TimeUnit.MILLISECONDS);
+        INSTANCE.streamingManager.closeIdleConnections(0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the statistics of the connection pool.
+     */
+    public static PoolStats getStats() {
+        return INSTANCE.connectionManager.getTotalStats();
+    }
+
+    /**
+     * @return the statistics of the pool used by {@link #open(HttpUriRequest)}.
+     */
+    public static PoolStats getStreamingStats() {
+        return INSTANCE.streamingManager.getTotalStats();
+    }
+
+    /**
+     * @return the statistics of the connection pools in a human readable form.
+     */
+    public static String describeStats() {
+        return "connection pool: " + describe(getStats()) + ", streaming pool: " + describe(getStreamingStats());
+    }
+
+    private static String describe(PoolStats stats) {
+        return stats.getLeased() + " leased, " + stats.getAvailable() + " idle, " + stats.getPending()
+                + " pending, " + stats.getMax() + " max";
+    }
+
+    /**
+     * The status code, headers and body of a response.
+     */
+    public static final class Response {
+
+        private final int status;
+
+        private final String body;
+
+        private final Header[] headers;
+
+        Response(int status, String body, Header[] headers) {
+            this.status = status;
+            this.body = body;
+            this.headers = headers;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public String getBody() {
+            return body;
+        }
+
+        /**
+         * @return the value of the first header with the name, null if there is none.
+         */
+        public String getHeader(String name) {
+            for (Header header : headers) {
+                if (header.getName().equalsIgnoreCase(name)) {
+                    return header.getValue();
+                }
+            }
+            return null;
+        }
+    }
+
+}
@@ -30,5 +30,6 @@ public enum PromotionBuildTokens {
     VERSION,
     EXTENSION,
     STAGING_REPOSITORY,
-    RELEASE_REPOSITORY;
+    RELEASE_REPOSITORY,
+    ARTIFACTS;
 }
@@ -0,0 +1,268 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Halil-Cem Guersoy and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.artifactpromotion;
+
+import java.io.PrintStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.aether.transfer.AbstractTransferListener;
+import org.eclipse.aether.transfer.TransferEvent;
+import org.eclipse.aether.transfer.TransferListener;
+
+/**
+ * The timings and counters of one promotion. They are collected by the
+ * closure on the agent, sent back to the master and published there.
+ * The counters are updated concurrently by the workers of a batch.
+ * <p>
+ * The phase times are summed over the artifacts. As the artifacts of a
+ * batch are promoted in parallel, the sums may exceed the wall-clock time
+ * of the promotion, which is kept separately. Besides the sums, the single
+ * durations of every phase and artifact are kept as samples, up to
+ * {@link #MAX_SAMPLES} per phase, to be published as timers.
+ */
+public class PromotionMetrics implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The maximum number of durations kept per phase.
+     */
+    static final int MAX_SAMPLES = 1000;
+
+    private final AtomicLong queueMillis = new AtomicLong();
+    private final AtomicLong promotionMillis = new AtomicLong();
+    private final Phase resolve = new Phase();
+    private final Phase pomCheck = new Phase();
+    private final Phase deploy = new Phase();
+    private final Phase delete = new Phase();
+    private final Phase artifact = new Phase();
+    private final AtomicLong bytesDownloaded = new AtomicLong();
+    private final AtomicLong bytesUploaded = new AtomicLong();
+    private final AtomicLong artifacts = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    /**
+     * The versions left to the master to delete from staging, as
+     * groupId:artifactId:version. Not a metric, but returned with them.
+     */
+    private final List<String> deferredDeletions = Collections.synchronizedList(new ArrayList<String>());
+
+    /**
+     * @param millis the time the promotion waited for a free slot on the master.
+     */
+    public void setQueueTime(long millis) {
+        queueMillis.set(millis);
+    }
+
+    /**
+     * @param start the start of the whole promotion, its wall-clock time is recorded.
+     */
+    public void setPromotionTime(long start) {
+        promotionMillis.set(System.currentTimeMillis() - start);
+    }
+
+    public void addResolveTime(long start) {
+        resolve.add(System.currentTimeMillis() - start);
+    }
+
+    public void addPomCheckTime(long start) {
+        pomCheck.add(System.currentTimeMillis() - start);
+    }
+
+    public void addDeployTime(long start) {
+        deploy.add(System.currentTimeMillis() - start);
+    }
+
+    public void addDeleteTime(long start) {
+        delete.add(System.currentTimeMillis() - start);
+    }
+
+    /**
+     * @param start the start of the promotion of a single artifact, retries included.
+     */
+    public void addArtifactTime(long start) {
+        artifact.add(System.currentTimeMillis() - start);
+    }
+
+    public void addBytesDownloaded(long bytes) {
+        bytesDownloaded.addAndGet(bytes);
+    }
+
+    public void addBytesUploaded(long bytes) {
+        bytesUploaded.addAndGet(bytes);
+    }
+
+    public void setArtifacts(long count) {
+        artifacts.set(count);
+    }
+
+    public void addRetry() {
+        retries.incrementAndGet();
+    }
+
+    public void setFailures(long count) {
+        failures.set(count);
+    }
+
+    public long getQueueMillis() {
+        return queueMillis.get();
+    }
+
+    /**
+     * @return the wall-clock time of the promotion without the queue time.
+     */
+    public long getPromotionMillis() {
+        return promotionMillis.get();
+    }
+
+    public long getResolveMillis() {
+        return resolve.total.get();
+    }
+
+    public long getPomCheckMillis() {
+        return pomCheck.total.get();
+    }
+
+    public long getDeployMillis() {
+        return deploy.total.get();
+    }
+
+    public long getDeleteMillis() {
+        return delete.total.get();
+    }
+
+    /**
+     * @return the single durations by phase in ms, the promotions of the
+     *         single artifacts as "artifact".
+     */
+    public Map<String, long[]> getSamples() {
+        Map<String, long[]> samples = new LinkedHashMap<String, long[]>();
+        samples.put("resolve", resolve.getSamples());
+        samples.put("pomCheck", pomCheck.getSamples());
+        samples.put("deploy", deploy.getSamples());
+        samples.put("delete", delete.getSamples());
+        samples.put("artifact", artifact.getSamples());
+        return samples;
+    }
+
+    public long getBytesDownloaded() {
+        return bytesDownloaded.get();
+    }
+
+    public long getBytesUploaded() {
+        return bytesUploaded.get();
+    }
+
+    public long getArtifacts() {
+        return artifacts.get();
+    }
+
+    public long getRetries() {
+        return retries.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    public void addDeferredDeletion(String groupId, String artifactId, String version) {
+        deferredDeletions.add(groupId + ":" + artifactId + ":" + version);
+    }
+
+    public List<String> getDeferredDeletions() {
+        return deferredDeletions;
+    }
+
+    /**
+     * @return the bytes moved per second of the promotion in KB, based on the
+     *         wall-clock time, as the phase times of parallel artifacts overlap.
+     */
+    public long getThroughput() {
+        long millis = getPromotionMillis() > 0 ? getPromotionMillis() : getResolveMillis() + getDeployMillis();
+        return millis == 0 ? 0 : (getBytesDownloaded() + getBytesUploaded()) * 1000 / 1024 / millis;
+    }
+
+    /**
+     * @return a listener counting the bytes transferred by aether.
+     */
+    public TransferListener newTransferListener() {
+        return new AbstractTransferListener() {
+            @Override
+            public void transferSucceeded(TransferEvent event) {
+                if (event.getRequestType() == TransferEvent.RequestType.PUT) {
+                    addBytesUploaded(event.getTransferredBytes());
+                } else {
+                    addBytesDownloaded(event.getTransferredBytes());
+                }
+            }
+        };
+    }
+
+    public void print(PrintStream logger) {
+        logger.println("Promotion metrics: " + getArtifacts() + " artifacts, " + getFailures() + " failures, "
+                + getRetries() + " retries, queue " + getQueueMillis() + " ms, took " + getPromotionMillis()
+                + " ms, summed over the artifacts: resolve " + getResolveMillis() + " ms, POM check "
+                + getPomCheckMillis() + " ms, deploy " + getDeployMillis() + " ms, delete " + getDeleteMillis()
+                + " ms, " + getBytesDownloaded() / 1024 + " KB downloaded, " + getBytesUploaded() / 1024
+                + " KB uploaded, " + getThroughput() + " KB/sec");
+    }
+
+    /**
+     * The summed time of a phase together with its single durations.
+     */
+    private static final class Phase implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final AtomicLong total = new AtomicLong();
+
+        private final List<Long> samples = new ArrayList<Long>();
+
+        void add(long millis) {
+            total.addAndGet(millis);
+            synchronized (samples) {
+                if (samples.size() < MAX_SAMPLES) {
+                    samples.add(millis);
+                }
+            }
+        }
+
+        long[] getSamples() {
+            synchronized (samples) {
+                long[] result = new long[samples.size()];
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = samples.get(i);
+                }
+                return result;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,104 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Halil-Cem Guersoy and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.artifactpromotion;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.MetricRegistry;
+
+import jenkins.metrics.api.Metrics;
+import jenkins.model.Jenkins;
+
+/**
+ * Publishes the {@link PromotionMetrics} into the registry of the metrics
+ * plugin, if it is installed. The names are tagged with the promoter and
+ * the release repository, e.g.
+ * <code>artifact-promotion.NexusOSSPromotor.nexus_example_com_content_repositories_releases.deploy</code>.
+ * <p>
+ * The timer <code>promotion</code> records the wall-clock time of every
+ * promotion, the timers of the phases and <code>artifact</code> record the
+ * single durations of every artifact, so their histograms aren't distorted
+ * by the size of a batch.
+ */
+public final class PromotionMetricsPublisher {
+
+    private static final String PREFIX = "artifact-promotion";
+
+    private PromotionMetricsPublisher() {
+    }
+
+    public static void publish(String promoter, String repository, PromotionMetrics metrics) {
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (jenkins == null || jenkins.getPlugin("metrics") == null) {
+            return;
+        }
+        Registry.publish(promoter, toTag(repository), metrics);
+    }
+
+    /**
+     * @return the repository URL without scheme, usable as part of a metric name.
+     */
+    static String toTag(String repository) {
+        if (repository == null) {
+            return "unknown";
+        }
+        return repository.replaceFirst("^[a-zA-Z]+://", "").replaceAll("/+$", "").replaceAll("[^A-Za-z0-9-]", "_");
+    }
+
+    /**
+     * Only loaded if the metrics plugin is installed.
+     */
+    private static final class Registry {
+
+        static void publish(String promoter, String repository, PromotionMetrics metrics) {
+            MetricRegistry registry = Metrics.metricRegistry();
+            timer(registry, promoter, repository, "queue", metrics.getQueueMillis());
+            timer(registry, promoter, repository, "promotion", metrics.getPromotionMillis());
+            for (Map.Entry<String, long[]> phase : metrics.getSamples().entrySet()) {
+                for (long millis : phase.getValue()) {
+                    timer(registry, promoter, repository, phase.getKey(), millis);
+                }
+            }
+            registry.counter(MetricRegistry.name(PREFIX, promoter, repository, "bytesDownloaded"))
+                    .inc(metrics.getBytesDownloaded());
+            registry.counter(MetricRegistry.name(PREFIX, promoter, repository, "bytesUploaded"))
+                    .inc(metrics.getBytesUploaded());
+            registry.counter(MetricRegistry.name(PREFIX, promoter, repository, "artifacts"))
+                    .inc(metrics.getArtifacts());
+            registry.counter(MetricRegistry.name(PREFIX, promoter, repository, "retries"))
+                    .inc(metrics.getRetries());
+            registry.counter(MetricRegistry.name(PREFIX, promoter, repository, "failures"))
+                    .inc(metrics.getFailures());
+            registry.histogram(MetricRegistry.name(PREFIX, promoter, repository, "throughput"))
+                    .update(metrics.getThroughput());
+        }
+
+        private static void timer(MetricRegistry registry, String promoter, String repository, String phase,
+                long millis) {
+            registry.timer(MetricRegistry.name(PREFIX, promoter, repository, phase))
+                    .update(millis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+}
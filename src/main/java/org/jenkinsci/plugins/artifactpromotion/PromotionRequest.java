@@ -0,0 +1,274 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Halil-Cem Guersoy and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.artifactpromotion;
+
+import hudson.util.Secret;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.util.Map;
+
+/**
+ * Everything a promotion closure needs to know, sent to the agent with the
+ * closure. The serialized form is written by hand: a version number, the
+ * expanded tokens by their ordinal, the strings and the options packed
+ * into a bit set, so the request stays small and independent of the field
+ * layout of this class.
+ */
+public final class PromotionRequest implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The version of the serialized form, to be increased with every change of it.
+     */
+    static final int VERSION = 2;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int SKIP_DELETION = 1;
+    private static final int DEBUG = 1 << 1;
+    private static final int PROMOTE_ATTACHED = 1 << 2;
+    private static final int STREAMING = 1 << 3;
+    private static final int CLEANUP_LOCAL_REPOSITORY = 1 << 4;
+    private static final int DEFER_DELETION = 1 << 5;
+    private static final int RESUMED = 1 << 6;
+
+    private transient String[] tokens = new String[PromotionBuildTokens.values().length];
+    private transient String localRepositoryURL;
+    private transient String stagingUser;
+    private transient Secret stagingPassword;
+    private transient String releaseUser;
+    private transient Secret releasePassword;
+    private transient int flags;
+    private transient int parallelism;
+    private transient int memoryThreshold;
+    private transient int retries;
+
+    /**
+     * @param expandedTokens the expanded tokens of the build step.
+     * @param localRepositoryURL the local repository on the agent, may be null.
+     */
+    public PromotionRequest(Map<PromotionBuildTokens, String> expandedTokens, String localRepositoryURL) {
+        for (Map.Entry<PromotionBuildTokens, String> token : expandedTokens.entrySet()) {
+            tokens[token.getKey().ordinal()] = token.getValue();
+        }
+        this.localRepositoryURL = localRepositoryURL;
+    }
+
+    public String getToken(PromotionBuildTokens token) {
+        return tokens[token.ordinal()];
+    }
+
+    public String getLocalRepositoryURL() {
+        return localRepositoryURL;
+    }
+
+    public void setStaging(String user, Secret password) {
+        this.stagingUser = user;
+        this.stagingPassword = password;
+    }
+
+    public String getStagingUser() {
+        return stagingUser;
+    }
+
+    public Secret getStagingPassword() {
+        return stagingPassword;
+    }
+
+    public void setRelease(String user, Secret password) {
+        this.releaseUser = user;
+        this.releasePassword = password;
+    }
+
+    public String getReleaseUser() {
+        return releaseUser;
+    }
+
+    public Secret getReleasePassword() {
+        return releasePassword;
+    }
+
+    public boolean isSkipDeletion() {
+        return (flags & SKIP_DELETION) != 0;
+    }
+
+    public void setSkipDeletion(boolean skipDeletion) {
+        setFlag(SKIP_DELETION, skipDeletion);
+    }
+
+    public boolean isDebug() {
+        return (flags & DEBUG) != 0;
+    }
+
+    public void setDebug(boolean debug) {
+        setFlag(DEBUG, debug);
+    }
+
+    public boolean isPromoteAttached() {
+        return (flags & PROMOTE_ATTACHED) != 0;
+    }
+
+    public void setPromoteAttached(boolean promoteAttached) {
+        setFlag(PROMOTE_ATTACHED, promoteAttached);
+    }
+
+    public boolean isStreaming() {
+        return (flags & STREAMING) != 0;
+    }
+
+    public void setStreaming(boolean streaming) {
+        setFlag(STREAMING, streaming);
+    }
+
+    public boolean isCleanupLocalRepository() {
+        return (flags & CLEANUP_LOCAL_REPOSITORY) != 0;
+    }
+
+    public void setCleanupLocalRepository(boolean cleanupLocalRepository) {
+        setFlag(CLEANUP_LOCAL_REPOSITORY, cleanupLocalRepository);
+    }
+
+    public boolean isDeferDeletion() {
+        return (flags & DEFER_DELETION) != 0;
+    }
+
+    public void setDeferDeletion(boolean deferDeletion) {
+        setFlag(DEFER_DELETION, deferDeletion);
+    }
+
+    /**
+     * @return true if the promotion is started again after a restart of the
+     *         controller, then an earlier run may have promoted and deleted
+     *         some artifacts already.
+     */
+    public boolean isResumed() {
+        return (flags & RESUMED) != 0;
+    }
+
+    public void setResumed(boolean resumed) {
+        setFlag(RESUMED, resumed);
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public int getMemoryThreshold() {
+        return memoryThreshold;
+    }
+
+    public void setMemoryThreshold(int memoryThreshold) {
+        this.memoryThreshold = memoryThreshold;
+    }
+
+    public int getRetries() {
+        return retries;
+    }
+
+    public void setRetries(int retries) {
+        this.retries = retries;
+    }
+
+    private void setFlag(int flag, boolean value) {
+        flags = value ? flags | flag : flags & ~flag;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeByte(VERSION);
+        out.writeInt(tokens.length);
+        for (String token : tokens) {
+            writeString(out, token);
+        }
+        writeString(out, localRepositoryURL);
+        writeString(out, stagingUser);
+        writeString(out, releaseUser);
+        // a Secret can only be created on the master, so it is sent as it is
+        out.writeObject(stagingPassword);
+        out.writeObject(releasePassword);
+        out.writeByte(flags);
+        out.writeShort(parallelism);
+        out.writeInt(memoryThreshold);
+        out.writeShort(retries);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new InvalidObjectException("Unsupported version " + version + " of the promotion request");
+        }
+        tokens = new String[PromotionBuildTokens.values().length];
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String token = readString(in);
+            if (i < tokens.length) {
+                tokens[i] = token;
+            }
+        }
+        localRepositoryURL = readString(in);
+        stagingUser = readString(in);
+        releaseUser = readString(in);
+        stagingPassword = (Secret) in.readObject();
+        releasePassword = (Secret) in.readObject();
+        flags = in.readUnsignedByte();
+        parallelism = in.readShort();
+        memoryThreshold = in.readInt();
+        retries = in.readShort();
+    }
+
+    /**
+     * Writes a string of any length, {@link ObjectOutputStream#writeUTF(String)}
+     * is limited to 64 KB, which a large batch of coordinates may exceed.
+     */
+    private static void writeString(ObjectOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ObjectInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF8);
+    }
+
+}
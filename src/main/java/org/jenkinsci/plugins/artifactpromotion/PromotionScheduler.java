@@ -0,0 +1,261 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Halil-Cem Guersoy and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.artifactpromotion;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import hudson.model.Computer;
+import jenkins.model.Jenkins;
+
+/**
+ * Limits the number of promotions running at the same time against one
+ * repository host. The promotions of all builds on the master are queued
+ * here, so many builds promoting at once don't overload the repository.
+ * <p>
+ * A free slot goes to the waiting promotion with the highest priority. Among
+ * promotions of the same priority the one whose folder, then whose job, has
+ * the fewest promotions running on that host is started first, so a single
+ * folder can't take all slots. The remaining ties are started in the order of
+ * arrival.
+ * <p>
+ * The limits are part of the global configuration of the plugin. Nothing is
+ * persisted, the queue starts empty after a restart.
+ */
+public final class PromotionScheduler {
+
+    private static final PromotionScheduler INSTANCE = new PromotionScheduler();
+
+    /**
+     * The queues by host, guarded by this.
+     */
+    private final Map<String, HostQueue> queues = new HashMap<String, HostQueue>();
+
+    private long sequence;
+
+    private PromotionScheduler() {
+    }
+
+    public static PromotionScheduler getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Queues a promotion. The action is run on a thread of
+     * {@link Computer#threadPoolForRemoting} as soon as a slot on the host is
+     * free, which may be right away. It may block on the channel to the
+     * agent, so the shared timer isn't used. The slot has to be
+     * released when the promotion has finished.
+     *
+     * @param repository the URL of the repository the promotion writes to.
+     * @param priority promotions with a higher priority are started first.
+     * @param folder the full name of the folder of the job.
+     * @param job the full name of the job.
+     * @param action starts the promotion.
+     * @return the slot of the promotion.
+     */
+    public Slot schedule(String repository, int priority, String folder, String job, Runnable action) {
+        String host = toHost(repository);
+        List<Slot> granted = new ArrayList<Slot>();
+        Slot slot;
+        synchronized (this) {
+            HostQueue queue = queues.get(host);
+            if (queue == null) {
+                queue = new HostQueue();
+                queues.put(host, queue);
+            }
+            slot = new Slot(host, priority, folder, job, sequence++, action);
+            queue.waiting.add(slot);
+            dispatch(host, queue, granted);
+        }
+        start(granted);
+        return slot;
+    }
+
+    /**
+     * Frees the slot of a finished or cancelled promotion and starts the next
+     * ones. A promotion still waiting is removed from the queue. Releasing a
+     * slot twice has no effect.
+     */
+    public void release(Slot slot) {
+        if (slot == null) {
+            return;
+        }
+        List<Slot> granted = new ArrayList<Slot>();
+        synchronized (this) {
+            if (slot.released) {
+                return;
+            }
+            slot.released = true;
+            HostQueue queue = queues.get(slot.host);
+            if (queue == null) {
+                return;
+            }
+            if (!queue.waiting.remove(slot)) {
+                queue.running--;
+                decrement(queue.runningByFolder, slot.folder);
+                decrement(queue.runningByJob, slot.job);
+            }
+            dispatch(slot.host, queue, granted);
+            if (queue.running == 0 && queue.waiting.isEmpty()) {
+                queues.remove(slot.host);
+            }
+        }
+        start(granted);
+    }
+
+    private void dispatch(String host, HostQueue queue, List<Slot> granted) {
+        int limit = getLimit(host);
+        while (!queue.waiting.isEmpty() && (limit <= 0 || queue.running < limit)) {
+            Slot next = null;
+            for (Slot candidate : queue.waiting) {
+                if (next == null || isBefore(queue, candidate, next)) {
+                    next = candidate;
+                }
+            }
+            queue.waiting.remove(next);
+            queue.running++;
+            increment(queue.runningByFolder, next.folder);
+            increment(queue.runningByJob, next.job);
+            next.granted = System.currentTimeMillis();
+            granted.add(next);
+        }
+    }
+
+    private static boolean isBefore(HostQueue queue, Slot a, Slot b) {
+        if (a.priority != b.priority) {
+            return a.priority > b.priority;
+        }
+        int folders = count(queue.runningByFolder, a.folder) - count(queue.runningByFolder, b.folder);
+        if (folders != 0) {
+            return folders < 0;
+        }
+        int jobs = count(queue.runningByJob, a.job) - count(queue.runningByJob, b.job);
+        if (jobs != 0) {
+            return jobs < 0;
+        }
+        return a.sequence < b.sequence;
+    }
+
+    private static void start(List<Slot> granted) {
+        for (Slot slot : granted) {
+            Computer.threadPoolForRemoting.submit(slot.action);
+        }
+    }
+
+    /**
+     * @return the limit configured for the host, 0 for no limit.
+     */
+    private static int getLimit(String host) {
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (jenkins == null) {
+            return 0;
+        }
+        ArtifactPromotionBuilder.ArtifactPromotionDescriptorImpl descriptor = jenkins
+                .getDescriptorByType(ArtifactPromotionBuilder.ArtifactPromotionDescriptorImpl.class);
+        return descriptor == null ? 0 : descriptor.getLimit(host);
+    }
+
+    /**
+     * @return host and port of the repository, the URL itself if it can't be parsed.
+     */
+    static String toHost(String repository) {
+        if (repository == null) {
+            return "";
+        }
+        try {
+            URI uri = new URI(repository.trim());
+            if (uri.getHost() == null) {
+                return repository;
+            }
+            return uri.getPort() == -1 ? uri.getHost() : uri.getHost() + ":" + uri.getPort();
+        } catch (Exception e) {
+            return repository;
+        }
+    }
+
+    private static int count(Map<String, Integer> running, String key) {
+        Integer count = running.get(key);
+        return count == null ? 0 : count;
+    }
+
+    private static void increment(Map<String, Integer> running, String key) {
+        running.put(key, count(running, key) + 1);
+    }
+
+    private static void decrement(Map<String, Integer> running, String key) {
+        int count = count(running, key) - 1;
+        if (count <= 0) {
+            running.remove(key);
+        } else {
+            running.put(key, count);
+        }
+    }
+
+    private static final class HostQueue {
+        private final List<Slot> waiting = new LinkedList<Slot>();
+        private final Map<String, Integer> runningByFolder = new HashMap<String, Integer>();
+        private final Map<String, Integer> runningByJob = new HashMap<String, Integer>();
+        private int running;
+    }
+
+    /**
+     * The place of one promotion in the queue of a host.
+     */
+    public static final class Slot {
+        private final String host;
+        private final int priority;
+        private final String folder;
+        private final String job;
+        private final long sequence;
+        private final Runnable action;
+        private final long queued = System.currentTimeMillis();
+        private volatile long granted;
+        private boolean released;
+
+        private Slot(String host, int priority, String folder, String job, long sequence, Runnable action) {
+            this.host = host;
+            this.priority = priority;
+            this.folder = folder;
+            this.job = job;
+            this.sequence = sequence;
+            this.action = action;
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        /**
+         * @return the time the promotion waited for the slot in ms.
+         */
+        public long getWaitTime() {
+            return granted == 0 ? System.currentTimeMillis() - queued : granted - queued;
+        }
+    }
+
+}
@@ -34,7 +34,7 @@ import org.jenkinsci.remoting.RoleChecker;
  * @author guersoy
  *
  */
-public class RemotePromoter implements Callable<Void, PromotionException> {
+public class RemotePromoter implements Callable<PromotionMetrics, PromotionException> {
 
     private static final long serialVersionUID = 1L;
 
@@ -53,10 +53,8 @@ public class RemotePromoter implements Callable<Void, PromotionException> {
      *
      * @see hudson.remoting.Callable#call()
      */
-    public Void call() throws PromotionException {
-        this.promotor.promote();
-        //satisfy Void
-        return null;
+    public PromotionMetrics call() throws PromotionException {
+        return this.promotor.promote();
     }
 
     @Override
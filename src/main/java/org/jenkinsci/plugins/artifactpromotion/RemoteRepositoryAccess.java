@@ -0,0 +1,281 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Halil-Cem Guersoy and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.artifactpromotion;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.net.URI;
+import java.nio.charset.Charset;
+
+import hudson.util.Secret;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.repository.AuthenticationContext;
+import org.eclipse.aether.repository.Proxy;
+import org.eclipse.aether.repository.RemoteRepository;
+
+/**
+ * Direct access to files of a remote repository in the default (maven2)
+ * layout. This is used where aether would need a local copy of a file, e.g.
+ * to pipe an artifact from one repository to another one. HTTP requests are
+ * sent through the {@link PooledHttpClient} with the authentication and the
+ * proxy of the aether repository.
+ */
+public final class RemoteRepositoryAccess {
+
+    /**
+     * The URL path delimiter.
+     */
+    private static final String DELI = "/";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private RemoteRepositoryAccess() {
+    }
+
+    /**
+     * @return the path of the artifact relative to the repository root.
+     */
+    public static String getPath(Artifact artifact) {
+        StringBuilder path = new StringBuilder(128);
+        path.append(artifact.getGroupId().replace('.', '/')).append(DELI);
+        path.append(artifact.getArtifactId()).append(DELI);
+        path.append(artifact.getBaseVersion()).append(DELI);
+        path.append(artifact.getArtifactId()).append('-').append(artifact.getVersion());
+        if (artifact.getClassifier().length() > 0) {
+            path.append('-').append(artifact.getClassifier());
+        }
+        if (artifact.getExtension().length() > 0) {
+            path.append('.').append(artifact.getExtension());
+        }
+        return path.toString();
+    }
+
+    /**
+     * @return the absolute URL of the artifact in the repository.
+     */
+    public static String getURL(RemoteRepository repository, Artifact artifact) {
+        String url = repository.getUrl();
+        return (url.endsWith(DELI) ? url : url + DELI) + getPath(artifact);
+    }
+
+    /**
+     * @return true if the repository is a local file repository.
+     */
+    public static boolean isFile(RemoteRepository repository) {
+        return "file".equalsIgnoreCase(repository.getProtocol());
+    }
+
+    /**
+     * @return the local file of a file URL.
+     */
+    public static File toFile(String url) {
+        return new File(URI.create(url));
+    }
+
+    /**
+     * Builds the value of a basic authorization header out of the
+     * authentication of the repository.
+     *
+     * @return the header value or null if the repository has no authentication.
+     */
+    public static String getAuthorization(RepositorySystemSession session, RemoteRepository repository) {
+        return getAuthorization(AuthenticationContext.forRepository(session, repository));
+    }
+
+    private static String getAuthorization(AuthenticationContext context) {
+        if (context == null) {
+            return null;
+        }
+        try {
+            String user = context.get(AuthenticationContext.USERNAME);
+            String password = context.get(AuthenticationContext.PASSWORD);
+            if (user == null) {
+                return null;
+            }
+            String credentials = user + ":" + (password == null ? "" : password);
+            return "Basic " + java.util.Base64.getEncoder().encodeToString(credentials.getBytes(UTF8));
+        } finally {
+            AuthenticationContext.close(context);
+        }
+    }
+
+    /**
+     * Builds the value of a basic authorization header.
+     *
+     * @return the header value or null if no user is given.
+     */
+    public static String getAuthorization(String user, Secret password) {
+        if (user == null || user.length() == 0) {
+            return null;
+        }
+        String credentials = user + ":" + Secret.toString(password);
+        return "Basic " + java.util.Base64.getEncoder().encodeToString(credentials.getBytes(UTF8));
+    }
+
+    /**
+     * Prepares a request to a file of the repository. The basic authorization
+     * header is set and the request is routed through the proxy of the
+     * repository, if aether has one configured.
+     *
+     * @return the request.
+     */
+    public static <T extends HttpRequestBase> T prepare(T request, RepositorySystemSession session,
+            RemoteRepository repository) {
+        String authorization = getAuthorization(session, repository);
+        if (authorization != null) {
+            request.setHeader("Authorization", authorization);
+        }
+        Proxy proxy = repository.getProxy();
+        if (proxy != null) {
+            request.setConfig(PooledHttpClient.newRequestConfig()
+                    .setProxy(new HttpHost(proxy.getHost(), proxy.getPort(), proxy.getType()))
+                    .build());
+            String proxyAuthorization = getAuthorization(AuthenticationContext.forProxy(session, repository));
+            if (proxyAuthorization != null) {
+                request.setHeader("Proxy-Authorization", proxyAuthorization);
+            }
+        }
+        return request;
+    }
+
+    /**
+     * Checks if an artifact exists in the repository, using a HEAD request
+     * for HTTP repositories and the file system for file repositories.
+     *
+     * @return true if the artifact exists.
+     * @throws IOException thrown then the existence can't be determined.
+     */
+    public static boolean exists(RepositorySystemSession session, RemoteRepository repository, Artifact artifact)
+            throws IOException {
+        String url = getURL(repository, artifact);
+        if (isFile(repository)) {
+            return toFile(url).isFile();
+        }
+        int status = PooledHttpClient.execute(prepare(new HttpHead(url), session, repository)).getStatus();
+        if (status == HttpStatus.SC_OK) {
+            return true;
+        } else if (status == HttpStatus.SC_NOT_FOUND) {
+            return false;
+        }
+        throw new IOException("Unexpected status code " + status + " for " + url);
+    }
+
+    /**
+     * Determines the size of an artifact in the repository, using a HEAD
+     * request for HTTP repositories.
+     *
+     * @return the size in bytes or -1 if the repository doesn't report it.
+     * @throws IOException thrown then the request fails.
+     */
+    public static long getContentLength(RepositorySystemSession session, RemoteRepository repository,
+            Artifact artifact) throws IOException {
+        String url = getURL(repository, artifact);
+        if (isFile(repository)) {
+            File file = toFile(url);
+            return file.isFile() ? file.length() : -1;
+        }
+        PooledHttpClient.Response response = PooledHttpClient.execute(prepare(new HttpHead(url), session,
+                repository));
+        if (response.getStatus() != HttpStatus.SC_OK) {
+            throw new IOException("Unexpected status code " + response.getStatus() + " for " + url);
+        }
+        return parseLength(response.getHeader("Content-Length"));
+    }
+
+    /**
+     * @return the value of a Content-Length header or -1 if it is missing or invalid.
+     */
+    static long parseLength(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Reads the checksum of an artifact from the repository.
+     *
+     * @param algorithm the extension of the checksum file, e.g. sha1.
+     * @return the checksum or null if the repository has no such checksum file.
+     * @throws IOException thrown then the checksum file can't be read.
+     */
+    public static String getChecksum(RepositorySystemSession session, RemoteRepository repository,
+            Artifact artifact, String algorithm) throws IOException {
+        String url = getURL(repository, artifact) + "." + algorithm;
+        BufferedReader reader;
+        if (isFile(repository)) {
+            File file = toFile(url);
+            if (!file.isFile()) {
+                return null;
+            }
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8));
+        } else {
+            PooledHttpClient.Response response = PooledHttpClient.execute(prepare(new HttpGet(url), session,
+                    repository));
+            if (response.getStatus() == HttpStatus.SC_NOT_FOUND) {
+                return null;
+            } else if (response.getStatus() != HttpStatus.SC_OK) {
+                throw new IOException("Unexpected status code " + response.getStatus() + " for " + url);
+            }
+            reader = new BufferedReader(new StringReader(response.getBody()));
+        }
+        try {
+            String line = reader.readLine();
+            if (line == null || line.trim().length() == 0) {
+                return null;
+            }
+            // checksum files may contain the file name after the checksum
+            return line.trim().split("\\s+")[0];
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Formats a digest as lower case hex string like it is used by the
+     * repository checksum files.
+     */
+    public static String toHex(byte[] digest) {
+        char[] hex = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            hex[i * 2] = Character.forDigit((digest[i] >> 4) & 0xF, 16);
+            hex[i * 2 + 1] = Character.forDigit(digest[i] & 0xF, 16);
+        }
+        return new String(hex);
+    }
+
+}
@@ -39,20 +39,24 @@ import org.eclipse.aether.transport.http.HttpTransporterFactory;
  */
 public class RepositorySystemFactory {
 
-    private static RepositorySystem repository;
+    /**
+     * Lazily creates the repository system the first time it is needed,
+     * afterwards it is returned without any locking.
+     */
+    private static final class Holder {
+        private static final RepositorySystem REPOSITORY = getRepositoryInstance();
+    }
 
-    public static synchronized RepositorySystem getNewRepositorySystem(final PrintStream logger) {
-        if (repository == null)
-            getRepositoryInstance();
-        return repository;
+    public static RepositorySystem getNewRepositorySystem(final PrintStream logger) {
+        return Holder.REPOSITORY;
     }
 
-    private static void getRepositoryInstance() {
+    private static RepositorySystem getRepositoryInstance() {
         DefaultServiceLocator locator = MavenRepositorySystemUtils.newServiceLocator();
         locator.addService(RepositoryConnectorFactory.class, BasicRepositoryConnectorFactory.class);
         locator.addService(TransporterFactory.class, FileTransporterFactory.class);
         locator.addService(TransporterFactory.class, HttpTransporterFactory.class);
-        repository = locator.getService(RepositorySystem.class);
+        return locator.getService(RepositorySystem.class);
     }
 
 }
@@ -0,0 +1,261 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Halil-Cem Guersoy and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.artifactpromotion;
+
+import hudson.Util;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import hudson.util.Secret;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import jenkins.util.Timer;
+
+import org.jenkinsci.plugins.artifactpromotion.exception.PromotionException;
+
+/**
+ * A promotion queued in the {@link PromotionScheduler} or running on a node.
+ * It holds everything needed to report the result, so it doesn't depend on
+ * the state of the promotor afterwards. Callbacks registered with
+ * {@link #whenDone(Runnable)} are run once it has finished, so the caller
+ * doesn't have to wait for it.
+ */
+public class RunningPromotion {
+
+    /**
+     * The interval in ms in which a running remote call is checked.
+     */
+    private static final long CHECK_INTERVAL = 500;
+
+    private final TaskListener listener;
+    private final String promoter;
+    private final String releaseRepository;
+    private final boolean debug;
+    private final long queued = System.currentTimeMillis();
+    private final CountDownLatch launched = new CountDownLatch(1);
+    private volatile Future<PromotionMetrics> future;
+    private volatile PromotionException failure;
+    private volatile PromotionScheduler.Slot slot;
+    private volatile boolean cancelled;
+    private volatile long waited;
+    private volatile long start;
+    private volatile File temporaryRepository;
+    private volatile String stagingRepository;
+    private volatile String stagingUser;
+    private volatile Secret stagingPassword;
+    private final List<Runnable> callbacks = new ArrayList<Runnable>();
+    private boolean done;
+
+    RunningPromotion(TaskListener listener, String promoter, String releaseRepository, boolean debug) {
+        this.listener = listener;
+        this.promoter = promoter;
+        this.releaseRepository = releaseRepository;
+        this.debug = debug;
+    }
+
+    void setSlot(PromotionScheduler.Slot slot) {
+        this.slot = slot;
+    }
+
+    /**
+     * Starts the remote call, once the scheduler granted a slot.
+     */
+    void launch(VirtualChannel channel, RemotePromoter task) {
+        waited = System.currentTimeMillis() - queued;
+        listener.getLogger().println("Waited " + waited + " ms in the promotion queue");
+        start = System.currentTimeMillis();
+        try {
+            if (cancelled) {
+                throw new PromotionException("Promotion has been cancelled");
+            }
+            future = channel.callAsync(task);
+            checkCompletion(future);
+        } catch (IOException e) {
+            listener.getLogger().println("Promotion could not be executed");
+            e.printStackTrace(listener.getLogger());
+            failure = new PromotionException("Promotion could not be executed: " + e.getMessage(), e);
+        } catch (PromotionException e) {
+            failure = e;
+        } finally {
+            launched.countDown();
+            if (future == null) {
+                complete();
+            }
+        }
+    }
+
+    /**
+     * Checks on the {@link Timer} whether the remote call has returned, as the
+     * remote future can't notify anybody by itself. The check reschedules
+     * itself and never blocks, so no thread waits for a running promotion.
+     */
+    private void checkCompletion(final Future<PromotionMetrics> running) {
+        Timer.get().schedule(new Runnable() {
+            public void run() {
+                if (running.isDone()) {
+                    complete();
+                } else {
+                    checkCompletion(running);
+                }
+            }
+        }, CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs the callback once the promotion has finished, successfully or not,
+     * or right away if it has already finished. {@link #get()} doesn't block
+     * in the callback.
+     */
+    public void whenDone(Runnable callback) {
+        synchronized (callbacks) {
+            if (!done) {
+                callbacks.add(callback);
+                return;
+            }
+        }
+        callback.run();
+    }
+
+    private void complete() {
+        List<Runnable> pending;
+        synchronized (callbacks) {
+            if (done) {
+                return;
+            }
+            done = true;
+            pending = new ArrayList<Runnable>(callbacks);
+            callbacks.clear();
+        }
+        for (Runnable callback : pending) {
+            callback.run();
+        }
+    }
+
+    /**
+     * @return true if the promotion has finished, successfully or not.
+     */
+    public boolean isDone() {
+        return launched.getCount() == 0 && (future == null || future.isDone());
+    }
+
+    public void cancel() {
+        cancelled = true;
+        Future<PromotionMetrics> running = future;
+        if (running != null) {
+            running.cancel(true);
+        }
+        PromotionScheduler.getInstance().release(slot);
+        delete(temporaryRepository);
+    }
+
+    /**
+     * @param directory a temporary local repository to delete when the
+     *            promotion has finished, may be null.
+     * @return this promotion.
+     */
+    RunningPromotion deleteOnCompletion(File directory) {
+        this.temporaryRepository = directory;
+        return this;
+    }
+
+    /**
+     * The versions whose deletion the closure deferred are queued in the
+     * {@link DeferredDeletionQueue} for this staging repository.
+     *
+     * @return this promotion.
+     */
+    RunningPromotion deferDeletions(String repository, String user, Secret password) {
+        this.stagingRepository = repository;
+        this.stagingUser = user;
+        this.stagingPassword = password;
+        return this;
+    }
+
+    static void delete(File directory) {
+        if (directory == null) {
+            return;
+        }
+        try {
+            Util.deleteRecursive(directory);
+        } catch (IOException e) {
+            // left to the cleanup of the temporary directory
+        }
+    }
+
+    /**
+     * Waits for the promotion, then prints and publishes its metrics.
+     *
+     * @throws PromotionException thrown then the promotion has gone wrong
+     */
+    public void get() throws PromotionException {
+        PromotionMetrics metrics = null;
+        try {
+            launched.await();
+            if (failure != null) {
+                throw failure;
+            }
+            metrics = future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() == null ? e : e.getCause();
+            if (cause instanceof PromotionException) {
+                metrics = ((PromotionException) cause).getMetrics();
+            }
+            listener.getLogger().println("Promotion could not be executed");
+            cause.printStackTrace(listener.getLogger());
+            throw new PromotionException("Promotion could not be executed: " + cause.getMessage());
+        } catch (CancellationException e) {
+            throw new PromotionException("Promotion has been cancelled", e);
+        } catch (InterruptedException e) {
+            cancel();
+            Thread.currentThread().interrupt();
+            throw new PromotionException("Promotion has been interrupted", e);
+        } finally {
+            PromotionScheduler.getInstance().release(slot);
+            delete(temporaryRepository);
+            if (debug && start != 0) {
+                listener.getLogger().println("Remote promotion call took "
+                        + (System.currentTimeMillis() - start) + " ms");
+            }
+            if (metrics != null && stagingRepository != null && !metrics.getDeferredDeletions().isEmpty()) {
+                listener.getLogger().println(metrics.getDeferredDeletions().size()
+                        + " versions are queued for deletion from the staging repository");
+                DeferredDeletionQueue.getInstance().add(stagingRepository, stagingUser, stagingPassword,
+                        metrics.getDeferredDeletions());
+            }
+            if (metrics != null) {
+                metrics.setQueueTime(waited);
+                metrics.print(listener.getLogger());
+                PromotionMetricsPublisher.publish(promoter, releaseRepository, metrics);
+            }
+        }
+    }
+
+}
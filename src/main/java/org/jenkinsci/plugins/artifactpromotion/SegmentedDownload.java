@@ -0,0 +1,284 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Halil-Cem Guersoy and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.artifactpromotion;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.repository.LocalArtifactRegistration;
+import org.eclipse.aether.repository.LocalRepositoryManager;
+import org.eclipse.aether.repository.RemoteRepository;
+
+/**
+ * Downloads large artifacts over several connections. The file is split
+ * into segments which are fetched with HTTP range requests and written
+ * into a preallocated file with positional writes. The SHA-1 checksum of
+ * the complete file is verified against the repository before the file
+ * is put into the local repository, where aether finds it afterwards.
+ * The requests are sent through the {@link PooledHttpClient} with the
+ * authentication and proxy of the repository.
+ * <p>
+ * The segmented download is disabled by default, as it costs a HEAD request
+ * per artifact to learn its size. It is enabled by setting
+ * <code>...segments</code> to more than one part, artifacts of at least
+ * <code>...threshold</code> MB (default 64) are split then. Both are system
+ * properties of the agent prefixed with
+ * <code>org.jenkinsci.plugins.artifactpromotion.SegmentedDownload</code>.
+ */
+public final class SegmentedDownload {
+
+    private static final String PREFIX = SegmentedDownload.class.getName() + ".";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final SegmentedDownload INSTANCE = create();
+
+    private final long threshold;
+
+    private final int segments;
+
+    SegmentedDownload(long threshold, int segments) {
+        this.threshold = threshold;
+        this.segments = segments;
+    }
+
+    private static SegmentedDownload create() {
+        int segments = Integer.getInteger(PREFIX + "segments", 1);
+        if (segments <= 1) {
+            return null;
+        }
+        return new SegmentedDownload(Long.getLong(PREFIX + "threshold", 64) * 1024 * 1024, segments);
+    }
+
+    /**
+     * @return the segmented download or null if it is disabled.
+     */
+    public static SegmentedDownload getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Downloads the large artifacts from HTTP repositories into the local
+     * repository of the session and registers them there. Artifacts which
+     * can't be downloaded in segments are left to aether.
+     *
+     * @return the number of downloaded artifacts.
+     */
+    public int prefetch(RepositorySystemSession session, RemoteRepository remoteRepo, List<Artifact> artifacts,
+            PrintStream logger) {
+        if (RemoteRepositoryAccess.isFile(remoteRepo)) {
+            return 0;
+        }
+        LocalRepositoryManager manager = session.getLocalRepositoryManager();
+        int downloaded = 0;
+        for (Artifact artifact : artifacts) {
+            if (ArtifactPromotionBuilder.POMTYPE.equals(artifact.getExtension())) {
+                continue;
+            }
+            File target = new File(manager.getRepository().getBasedir(), manager.getPathForLocalArtifact(artifact));
+            if (target.isFile()) {
+                continue;
+            }
+            try {
+                if (download(session, remoteRepo, artifact, target, logger)) {
+                    LocalRepositoryCleaner.track(session, target);
+                    manager.add(session, new LocalArtifactRegistration(artifact, remoteRepo,
+                            Collections.singleton("")));
+                    downloaded++;
+                }
+            } catch (IOException e) {
+                logger.println("Segmented download of " + artifact + " failed, falling back to a single connection: "
+                        + e.getMessage());
+            }
+        }
+        return downloaded;
+    }
+
+    private boolean download(final RepositorySystemSession session, final RemoteRepository remoteRepo,
+            Artifact artifact, File target, PrintStream logger) throws IOException {
+        final String url = RemoteRepositoryAccess.getURL(remoteRepo, artifact);
+
+        PooledHttpClient.Response head = PooledHttpClient.execute(RemoteRepositoryAccess.prepare(new HttpHead(url),
+                session, remoteRepo));
+        if (head.getStatus() != HttpStatus.SC_OK) {
+            return false;
+        }
+        long length = RemoteRepositoryAccess.parseLength(head.getHeader("Content-Length"));
+        if (length < threshold || !"bytes".equalsIgnoreCase(head.getHeader("Accept-Ranges"))) {
+            return false;
+        }
+
+        File parent = target.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+            throw new IOException("Unable to create directory " + parent);
+        }
+        File part = new File(parent, target.getName() + ".segments");
+        long start = System.currentTimeMillis();
+        logger.println("Downloading " + artifact + " (" + length / 1024 + " KB) in " + segments + " segments");
+
+        boolean success = false;
+        RandomAccessFile file = new RandomAccessFile(part, "rw");
+        try {
+            file.setLength(length);
+            final FileChannel channel = file.getChannel();
+            long size = (length + segments - 1) / segments;
+            ExecutorService executor = Executors.newFixedThreadPool(segments,
+                    new NamingThreadFactory(new DaemonThreadFactory(), "artifact-promotion-segment"));
+            try {
+                List<Future<Void>> results = new ArrayList<Future<Void>>(segments);
+                for (long offset = 0; offset < length; offset += size) {
+                    final long first = offset;
+                    final long last = Math.min(offset + size, length) - 1;
+                    results.add(executor.submit(new Callable<Void>() {
+                        public Void call() throws IOException {
+                            downloadSegment(RemoteRepositoryAccess.prepare(new HttpGet(url), session, remoteRepo),
+                                    channel, first, last);
+                            return null;
+                        }
+                    }));
+                }
+                for (Future<Void> result : results) {
+                    result.get();
+                }
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException ? (IOException) e.getCause()
+                        : new IOException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Download of " + url + " has been interrupted", e);
+            } finally {
+                executor.shutdownNow();
+            }
+            channel.force(false);
+
+            String expected = RemoteRepositoryAccess.getChecksum(session, remoteRepo, artifact, "sha1");
+            if (expected == null) {
+                throw new IOException("No SHA-1 checksum available to verify " + url);
+            }
+            String actual = sha1(channel, length);
+            if (!expected.equalsIgnoreCase(actual)) {
+                throw new IOException("Checksum validation failed, expected " + expected + " but is " + actual);
+            }
+            success = true;
+        } finally {
+            file.close();
+            if (!success && !part.delete()) {
+                logger.println("Unable to delete " + part);
+            }
+        }
+        Files.move(part.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+
+        long millis = Math.max(1, System.currentTimeMillis() - start);
+        logger.println("Downloaded " + artifact + " at " + length * 1000 / 1024 / millis + " KB/sec");
+        return true;
+    }
+
+    /**
+     * Fetches the bytes from first to last (inclusive) and writes them at
+     * their position into the file.
+     */
+    static void downloadSegment(HttpGet request, FileChannel channel, long first, long last)
+            throws IOException {
+        String url = request.getURI().toString();
+        request.setHeader("Range", "bytes=" + first + "-" + last);
+        CloseableHttpResponse response = PooledHttpClient.open(request);
+        try {
+            int status = response.getStatusLine().getStatusCode();
+            HttpEntity entity = response.getEntity();
+            if (status != HttpStatus.SC_PARTIAL_CONTENT || entity == null) {
+                throw new IOException("Unexpected status code " + status + " for range request to " + url);
+            }
+            InputStream in = entity.getContent();
+            try {
+                byte[] bytes = new byte[BUFFER_SIZE];
+                ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                long position = first;
+                int read;
+                while (position <= last && (read = in.read(bytes)) != -1) {
+                    buffer.clear().limit(read);
+                    while (buffer.hasRemaining()) {
+                        position += channel.write(buffer, position);
+                    }
+                }
+                if (position != last + 1) {
+                    throw new IOException("Range " + first + "-" + last + " of " + url + " ended at " + position);
+                }
+            } finally {
+                in.close();
+            }
+        } finally {
+            response.close();
+        }
+    }
+
+    private static String sha1(FileChannel channel, long length) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("The algorithm SHA-1 is not supported on your platform.", e);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long position = 0;
+        while (position < length) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            buffer.flip();
+            digest.update(buffer);
+            position += read;
+        }
+        return RemoteRepositoryAccess.toHex(digest.digest());
+    }
+
+}
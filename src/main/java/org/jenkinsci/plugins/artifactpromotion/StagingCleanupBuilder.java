@@ -0,0 +1,179 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Halil-Cem Guersoy and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.artifactpromotion;
+
+import hudson.AbortException;
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.AbstractProject;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.tasks.BuildStepDescriptor;
+import hudson.tasks.Builder;
+import hudson.util.Secret;
+import jenkins.tasks.SimpleBuildStep;
+import org.jenkinsci.plugins.artifactpromotion.exception.PromotionException;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+
+/**
+ * Deletes old versions of an artifact from a Nexus OSS staging repository.
+ * Run it in a periodically triggered job to get rid of release candidates
+ * which have never been promoted.
+ */
+public class StagingCleanupBuilder extends Builder implements SimpleBuildStep {
+
+    private final String stagingRepository;
+    private final String stagingUser;
+    private final Secret stagingPW;
+    private final String groupId;
+    private final String artifactId;
+    private int keepVersions;
+    private int maxAgeDays;
+    private int parallelism = ArtifactPromotionHelper.DEFAULT_PARALLELISM;
+    private boolean dryRun;
+    private boolean debug;
+
+    /**
+     * @param stagingRepository The URL of the staging repository.
+     * @param stagingUser       User to be used on staging repo.
+     * @param stagingPW         Password to be used on staging repo.
+     * @param groupId           The groupId of the artifact.
+     * @param artifactId        The artifactId of the artifact.
+     */
+    @DataBoundConstructor
+    public StagingCleanupBuilder(String stagingRepository, String stagingUser, String stagingPW, String groupId,
+                                 String artifactId) {
+        this.stagingRepository = stagingRepository;
+        this.stagingUser = stagingUser;
+        this.stagingPW = Secret.fromString(stagingPW);
+        this.groupId = groupId;
+        this.artifactId = artifactId;
+    }
+
+    @Override
+    public void perform(@Nonnull Run<?, ?> build, @Nonnull FilePath workspace, @Nonnull Launcher launcher,
+                        @Nonnull TaskListener listener) throws InterruptedException, IOException {
+        EnvVars env = build.getEnvironment(listener);
+        StagingCleanupNexusOSS cleanup = new StagingCleanupNexusOSS(listener, env.expand(stagingRepository),
+                env.expand(stagingUser), stagingPW, env.expand(groupId), env.expand(artifactId), keepVersions,
+                maxAgeDays, parallelism, dryRun, debug);
+        try {
+            launcher.getChannel().call(cleanup);
+        } catch (PromotionException e) {
+            listener.getLogger().println(e.getMessage());
+            throw new AbortException(e.getMessage());
+        }
+    }
+
+    public String getStagingRepository() {
+        return stagingRepository;
+    }
+
+    public String getStagingUser() {
+        return stagingUser;
+    }
+
+    public Secret getStagingPW() {
+        return stagingPW;
+    }
+
+    public String getGroupId() {
+        return groupId;
+    }
+
+    public String getArtifactId() {
+        return artifactId;
+    }
+
+    @DataBoundSetter
+    public void setKeepVersions(int keepVersions) {
+        this.keepVersions = keepVersions;
+    }
+
+    public int getKeepVersions() {
+        return keepVersions;
+    }
+
+    @DataBoundSetter
+    public void setMaxAgeDays(int maxAgeDays) {
+        this.maxAgeDays = maxAgeDays;
+    }
+
+    public int getMaxAgeDays() {
+        return maxAgeDays;
+    }
+
+    @DataBoundSetter
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    @DataBoundSetter
+    public void setDryRun(boolean dryRun) {
+        this.dryRun = dryRun;
+    }
+
+    public boolean isDryRun() {
+        return dryRun;
+    }
+
+    @DataBoundSetter
+    public void setDebug(boolean debug) {
+        this.debug = debug;
+    }
+
+    public boolean isDebug() {
+        return debug;
+    }
+
+    /**
+     * Descriptor for {@link StagingCleanupBuilder}.
+     */
+    @Extension
+    public static final class StagingCleanupDescriptorImpl extends BuildStepDescriptor<Builder>
+            implements FormValidator {
+
+        public boolean isApplicable(Class<? extends AbstractProject> aClass) {
+            return true;
+        }
+
+        /**
+         * This human readable name is used in the configuration screen.
+         */
+        public String getDisplayName() {
+            return "Staging Repository Cleanup (Nexus OSS)";
+        }
+
+    }
+
+}
@@ -0,0 +1,313 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Halil-Cem Guersoy and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.artifactpromotion;
+
+import hudson.Util;
+import hudson.model.TaskListener;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import hudson.util.Secret;
+import jenkins.security.MasterToSlaveCallable;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.utils.DateUtils;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.util.repository.AuthenticationBuilder;
+import org.jenkinsci.plugins.artifactpromotion.exception.PromotionException;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deletes old versions of an artifact from a Nexus OSS staging repository,
+ * e.g. release candidates which have never been promoted. The versions are
+ * listed from the directory of the artifact; the newest ones are kept by
+ * count and by age, the others are deleted with the same REST call a
+ * promotion uses.
+ * <p>
+ * The age of a version is the last modification of its newest file, its size
+ * the sum of its files. Both are determined with HEAD requests. Listing and
+ * deleting run concurrently on at most <code>parallelism</code> workers
+ * through the {@link PooledHttpClient}.
+ */
+public class StagingCleanupNexusOSS extends MasterToSlaveCallable<Void, PromotionException> {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The URL path delimiter.
+     */
+    private static final String DELI = "/";
+
+    private final TaskListener listener;
+    private final String stagingRepository;
+    private final String stagingUser;
+    private final Secret stagingPassword;
+    private final String groupId;
+    private final String artifactId;
+    private final int keepVersions;
+    private final int maxAgeDays;
+    private final int parallelism;
+    private final boolean dryRun;
+    private final boolean debug;
+
+    public StagingCleanupNexusOSS(TaskListener listener, String stagingRepository, String stagingUser,
+            Secret stagingPassword, String groupId, String artifactId, int keepVersions, int maxAgeDays,
+            int parallelism, boolean dryRun, boolean debug) {
+        this.listener = listener;
+        this.stagingRepository = stagingRepository;
+        this.stagingUser = stagingUser;
+        this.stagingPassword = stagingPassword;
+        this.groupId = groupId;
+        this.artifactId = artifactId;
+        this.keepVersions = keepVersions;
+        this.maxAgeDays = maxAgeDays;
+        this.parallelism = parallelism;
+        this.dryRun = dryRun;
+        this.debug = debug;
+    }
+
+    public Void call() throws PromotionException {
+        if (keepVersions <= 0 && maxAgeDays <= 0) {
+            throw new PromotionException("Neither the number of versions to keep nor a maximum age is set");
+        }
+        long start = System.currentTimeMillis();
+        RemoteRepository.Builder builder = new RemoteRepository.Builder("staging", "default",
+                stagingRepository.endsWith(DELI) ? stagingRepository : stagingRepository + DELI);
+        if (stagingUser != null && stagingUser.length() > 0) {
+            builder.setAuthentication(new AuthenticationBuilder().addUsername(stagingUser)
+                    .addPassword(Secret.toString(stagingPassword)).build());
+        }
+        final RemoteRepository repository = builder.build();
+        final RepositorySystemSession session = new DefaultRepositorySystemSession();
+        final ListArtifactsNexusOSS lister = new ListArtifactsNexusOSS(listener, stagingUser, stagingPassword, debug);
+        final String artifactURL = repository.getUrl() + groupId.replace(".", DELI) + DELI + artifactId + DELI;
+
+        List<String> names;
+        try {
+            names = lister.list(repository, artifactURL, true);
+        } catch (IllegalStateException e) {
+            throw new PromotionException("The versions of " + groupId + ":" + artifactId
+                    + " can't be listed: " + e.getMessage(), e);
+        }
+        listener.getLogger().println("Found " + names.size() + " versions of " + groupId + ":" + artifactId
+                + " in " + repository.getUrl());
+        if (names.isEmpty()) {
+            return null;
+        }
+
+        int threads = Math.min(parallelism > 0 ? parallelism : ArtifactPromotionHelper.DEFAULT_PARALLELISM,
+                names.size());
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+                new NamingThreadFactory(new DaemonThreadFactory(), "artifact-promotion-cleanup"));
+        try {
+            List<Future<Version>> inspected = new ArrayList<Future<Version>>(names.size());
+            for (final String name : names) {
+                inspected.add(executor.submit(new Callable<Version>() {
+                    public Version call() {
+                        return inspect(lister, session, repository, artifactURL + name + DELI, name);
+                    }
+                }));
+            }
+            List<Version> versions = new ArrayList<Version>(names.size());
+            for (int i = 0; i < names.size(); i++) {
+                try {
+                    versions.add(inspected.get(i).get());
+                } catch (ExecutionException e) {
+                    listener.getLogger().println("[FAILURE] " + names.get(i) + " can't be inspected, it is kept: "
+                            + e.getCause().getMessage());
+                }
+            }
+
+            List<Version> candidates = selectCandidates(versions);
+            if (dryRun) {
+                long bytes = 0;
+                for (Version version : candidates) {
+                    listener.getLogger().println("[DRY RUN] Would delete " + version);
+                    bytes += version.size;
+                }
+                listener.getLogger().println("Would delete " + candidates.size() + " of " + versions.size()
+                        + " versions and reclaim " + bytes / 1024 + " KB");
+                return null;
+            }
+
+            final DeleteArtifactNexusOSS deleter = new DeleteArtifactNexusOSS(listener, stagingUser,
+                    stagingPassword, debug);
+            List<Future<Void>> deleted = new ArrayList<Future<Void>>(candidates.size());
+            for (final Version version : candidates) {
+                deleted.add(executor.submit(new Callable<Void>() {
+                    public Void call() throws IOException {
+                        delete(deleter, repository, artifactURL + version.name + DELI, version.name);
+                        return null;
+                    }
+                }));
+            }
+            long bytes = 0;
+            int failures = 0;
+            for (int i = 0; i < candidates.size(); i++) {
+                Version version = candidates.get(i);
+                try {
+                    deleted.get(i).get();
+                    bytes += version.size;
+                    listener.getLogger().println("[DELETED] " + version);
+                } catch (ExecutionException e) {
+                    failures++;
+                    listener.getLogger().println("[FAILURE] " + version + ": " + e.getCause().getMessage());
+                }
+            }
+            listener.getLogger().println("Deleted " + (candidates.size() - failures) + " of " + versions.size()
+                    + " versions, reclaimed " + bytes / 1024 + " KB in " + (System.currentTimeMillis() - start)
+                    + " ms");
+            if (debug) {
+                listener.getLogger().println("HTTP " + PooledHttpClient.describeStats());
+            }
+            if (failures > 0) {
+                throw new PromotionException(failures + " versions could not be deleted");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PromotionException("Cleanup has been interrupted", e);
+        } finally {
+            executor.shutdownNow();
+        }
+        return null;
+    }
+
+    /**
+     * @return the versions to delete, the newest first. Versions of unknown age
+     *         are never deleted.
+     */
+    private List<Version> selectCandidates(List<Version> versions) {
+        Collections.sort(versions, new Comparator<Version>() {
+            public int compare(Version a, Version b) {
+                return Long.compare(b.lastModified, a.lastModified);
+            }
+        });
+        long oldest = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(maxAgeDays);
+        List<Version> candidates = new ArrayList<Version>();
+        for (int i = 0; i < versions.size(); i++) {
+            Version version = versions.get(i);
+            if (version.lastModified == 0) {
+                listener.getLogger().println("The age of " + version.name + " is unknown, it is kept");
+                continue;
+            }
+            if ((keepVersions > 0 && i >= keepVersions) || (maxAgeDays > 0 && version.lastModified < oldest)) {
+                candidates.add(version);
+            }
+        }
+        return candidates;
+    }
+
+    private Version inspect(ListArtifactsNexusOSS lister, RepositorySystemSession session,
+            RemoteRepository repository, String versionURL, String name) {
+        Version version = new Version(name);
+        for (String fileName : lister.list(repository, versionURL, false)) {
+            String fileURL = versionURL + fileName;
+            if ("file".equals(repository.getProtocol())) {
+                File file = new File(URI.create(fileURL));
+                version.add(file.length(), file.lastModified());
+                continue;
+            }
+            PooledHttpClient.Response response;
+            try {
+                response = PooledHttpClient.execute(RemoteRepositoryAccess.prepare(new HttpHead(fileURL), session,
+                        repository));
+            } catch (IOException e) {
+                throw new IllegalStateException("HEAD " + fileURL + " failed: " + e.getMessage(), e);
+            }
+            if (response.getStatus() != 200) {
+                throw new IllegalStateException("HEAD " + fileURL + " - status code is: " + response.getStatus());
+            }
+            Date modified = response.getHeader("Last-Modified") == null ? null
+                    : DateUtils.parseDate(response.getHeader("Last-Modified"));
+            version.add(parseLength(response.getHeader("Content-Length")),
+                    modified == null ? 0 : modified.getTime());
+        }
+        if (debug) {
+            listener.getLogger().println("Inspected " + version);
+        }
+        return version;
+    }
+
+    /**
+     * @return the length, 0 if the header is missing or malformed.
+     */
+    static long parseLength(String length) {
+        if (length == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(length.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private void delete(DeleteArtifactNexusOSS deleter, RemoteRepository repository, String versionURL,
+            String name) throws IOException {
+        if ("file".equals(repository.getProtocol())) {
+            Util.deleteRecursive(new File(URI.create(versionURL)));
+        } else {
+            deleter.deleteArtifact(repository, new DefaultArtifact(groupId, artifactId, "pom", name));
+        }
+    }
+
+    /**
+     * A version found in the staging repository.
+     */
+    private static final class Version {
+        private final String name;
+        private long size;
+        private long lastModified;
+
+        private Version(String name) {
+            this.name = name;
+        }
+
+        private void add(long bytes, long modified) {
+            size += bytes;
+            lastModified = Math.max(lastModified, modified);
+        }
+
+        @Override
+        public String toString() {
+            return name + " (" + size / 1024 + " KB, " + (lastModified == 0 ? "unknown age"
+                    : "last modified " + new Date(lastModified)) + ")";
+        }
+    }
+
+}
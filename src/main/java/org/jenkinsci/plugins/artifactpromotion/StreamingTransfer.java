@@ -0,0 +1,262 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Halil-Cem Guersoy and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.artifactpromotion;
+
+import hudson.model.TaskListener;
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.util.EntityUtils;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.repository.RemoteRepository;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Pipes an artifact from the staging repository straight into the release
+ * repository. The artifact is never written to the local disk, only a fixed
+ * size buffer is used and the checksums are computed while the bytes pass.
+ * Repository metadata isn't touched, this is left to the deployment of the
+ * POM by aether. HTTP requests go through the {@link PooledHttpClient}.
+ * <p>
+ * The expected SHA-1 checksum is read from the source repository before the
+ * transfer starts. If the streamed bytes don't match it, the uploaded file
+ * is deleted from the target repository again.
+ */
+public class StreamingTransfer {
+
+    /**
+     * The size of the buffer used to pipe the bytes.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private TaskListener listener;
+
+    private boolean debug;
+
+    public StreamingTransfer(TaskListener listener, boolean debug) {
+        super();
+        this.listener = listener;
+        this.debug = debug;
+    }
+
+    /**
+     * Transfer an artifact together with its checksum files from one
+     * repository to another one.
+     *
+     * @param session the session providing the authentication.
+     * @param sourceRepo the repository to read the artifact from.
+     * @param targetRepo the repository to write the artifact to.
+     * @param artifact the coordinates of the artifact.
+     * @return the number of transferred bytes.
+     * @throws IOException thrown then the transfer has failed.
+     */
+    public long transfer(RepositorySystemSession session, RemoteRepository sourceRepo,
+            RemoteRepository targetRepo, Artifact artifact) throws IOException {
+
+        String sourceURL = RemoteRepositoryAccess.getURL(sourceRepo, artifact);
+        String targetURL = RemoteRepositoryAccess.getURL(targetRepo, artifact);
+
+        listener.getLogger().println("Streaming: " + sourceURL + " to " + targetURL);
+
+        MessageDigest sha1 = newDigest("SHA-1");
+        MessageDigest md5 = newDigest("MD5");
+
+        long start = System.currentTimeMillis();
+        long transferred;
+        String expected = RemoteRepositoryAccess.getChecksum(session, sourceRepo, artifact, "sha1");
+        if (expected == null && debug) {
+            listener.getLogger().println("No checksum found at " + sourceURL + ".sha1");
+        }
+        CloseableHttpResponse source = null;
+        InputStream in;
+        long length;
+        if (RemoteRepositoryAccess.isFile(sourceRepo)) {
+            File file = RemoteRepositoryAccess.toFile(sourceURL);
+            if (!file.isFile()) {
+                throw new FileNotFoundException(sourceURL);
+            }
+            in = new FileInputStream(file);
+            length = file.length();
+        } else {
+            source = PooledHttpClient.open(RemoteRepositoryAccess.prepare(new HttpGet(sourceURL), session,
+                    sourceRepo));
+            HttpEntity entity = checkSource(source, sourceURL);
+            in = entity.getContent();
+            length = entity.getContentLength();
+        }
+        try {
+            if (RemoteRepositoryAccess.isFile(targetRepo)) {
+                OutputStream out = newFileOutputStream(targetURL);
+                try {
+                    transferred = pipe(in, out, sha1, md5);
+                } finally {
+                    out.close();
+                }
+            } else {
+                // the length is unknown (-1) if the source repository doesn't report it, the upload is chunked then
+                CountingInputStream body = new CountingInputStream(
+                        new DigestInputStream(new DigestInputStream(in, sha1), md5));
+                HttpPut put = RemoteRepositoryAccess.prepare(new HttpPut(targetURL), session, targetRepo);
+                put.setEntity(new InputStreamEntity(body, length));
+                checkResponse(PooledHttpClient.execute(put).getStatus(), targetURL);
+                transferred = body.getByteCount();
+            }
+        } finally {
+            in.close();
+            if (source != null) {
+                source.close();
+            }
+        }
+
+        String sha1Hex = RemoteRepositoryAccess.toHex(sha1.digest());
+        if (expected != null && !expected.equalsIgnoreCase(sha1Hex)) {
+            delete(session, targetRepo, targetURL);
+            throw new IOException("Checksum validation failed, expected " + expected + " but is " + sha1Hex
+                    + ", removed " + targetURL);
+        }
+        upload(session, targetRepo, targetURL + ".sha1", sha1Hex);
+        upload(session, targetRepo, targetURL + ".md5", RemoteRepositoryAccess.toHex(md5.digest()));
+
+        long duration = System.currentTimeMillis() - start;
+        listener.getLogger().println("Streamed: " + targetURL + " (" + transferred + " bytes"
+                + (duration > 0 ? " at " + (transferred / 1024 * 1000 / duration) + " KB/sec" : "") + ")");
+        return transferred;
+    }
+
+    /**
+     * Removes a corrupt upload from the target repository. A missing file is
+     * fine, the repository may have rejected the upload already.
+     */
+    private void delete(RepositorySystemSession session, RemoteRepository repository, String url)
+            throws IOException {
+        if (RemoteRepositoryAccess.isFile(repository)) {
+            File file = RemoteRepositoryAccess.toFile(url);
+            if (file.exists() && !file.delete()) {
+                throw new IOException("Unable to delete corrupt upload " + file);
+            }
+            return;
+        }
+        int status = PooledHttpClient.execute(RemoteRepositoryAccess.prepare(new HttpDelete(url), session,
+                repository)).getStatus();
+        if (status != HttpStatus.SC_NOT_FOUND && (status < 200 || status > 299)) {
+            throw new IOException("Unable to delete corrupt upload " + url + " - status code is: " + status);
+        }
+    }
+
+    private void upload(RepositorySystemSession session, RemoteRepository repository, String url, String content)
+            throws IOException {
+        byte[] bytes = content.getBytes(UTF8);
+        if (RemoteRepositoryAccess.isFile(repository)) {
+            OutputStream out = newFileOutputStream(url);
+            try {
+                out.write(bytes);
+            } finally {
+                out.close();
+            }
+            return;
+        }
+        HttpPut put = RemoteRepositoryAccess.prepare(new HttpPut(url), session, repository);
+        put.setEntity(new ByteArrayEntity(bytes));
+        checkResponse(PooledHttpClient.execute(put).getStatus(), url);
+    }
+
+    /**
+     * Copies the bytes and updates the digests on the way.
+     *
+     * @return the number of copied bytes.
+     */
+    static long pipe(InputStream in, OutputStream out, MessageDigest... digests) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long transferred = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+            for (MessageDigest digest : digests) {
+                digest.update(buffer, 0, read);
+            }
+            transferred += read;
+        }
+        return transferred;
+    }
+
+    private static HttpEntity checkSource(CloseableHttpResponse response, String url) throws IOException {
+        int status = response.getStatusLine().getStatusCode();
+        if (status == HttpStatus.SC_OK && response.getEntity() != null) {
+            return response.getEntity();
+        }
+        EntityUtils.consumeQuietly(response.getEntity());
+        response.close();
+        if (status == HttpStatus.SC_NOT_FOUND) {
+            throw new FileNotFoundException(url);
+        } else if (status == HttpStatus.SC_UNAUTHORIZED) {
+            throw new IOException("Invalid Username or Password while accessing " + url);
+        }
+        throw new IOException("Could not download " + url + " - status code is: " + status);
+    }
+
+    private static OutputStream newFileOutputStream(String url) throws IOException {
+        File file = RemoteRepositoryAccess.toFile(url);
+        File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory " + parent);
+        }
+        return new FileOutputStream(file);
+    }
+
+    private static void checkResponse(int status, String url) throws IOException {
+        if (status == HttpStatus.SC_UNAUTHORIZED) {
+            throw new IOException("Invalid Username or Password while accessing " + url);
+        } else if (status < 200 || status > 299) {
+            throw new IOException("Could not upload " + url + " - status code is: " + status);
+        }
+    }
+
+    private static MessageDigest newDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("The algorithm " + algorithm + " is not supported on your platform.", e);
+        }
+    }
+
+}
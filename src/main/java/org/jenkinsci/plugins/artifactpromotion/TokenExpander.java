@@ -0,0 +1,95 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Halil-Cem Guersoy and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.artifactpromotion;
+
+import hudson.FilePath;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jenkinsci.plugins.tokenmacro.MacroEvaluationException;
+import org.jenkinsci.plugins.tokenmacro.TokenMacro;
+
+/**
+ * Expands the tokens of the promotion fields. Literal values are not passed
+ * to the token macro plugin at all, the templated values are expanded with
+ * one call. Nothing is kept between steps, the environment and the
+ * values of the macros may differ from step to step of the same build.
+ */
+public final class TokenExpander {
+
+    /**
+     * Separates the values in the combined template, it is not expected to be produced by a macro.
+     */
+    private static final String SEPARATOR = "\u0000";
+
+    private TokenExpander() {
+    }
+
+    /**
+     * @param templates the values of the fields, which may contain tokens.
+     * @return the expanded values of the fields.
+     */
+    public static Map<PromotionBuildTokens, String> expand(Run<?, ?> build, FilePath workspace,
+            TaskListener listener, Map<PromotionBuildTokens, String> templates)
+            throws MacroEvaluationException, IOException, InterruptedException {
+
+        Map<PromotionBuildTokens, String> expanded = new EnumMap<PromotionBuildTokens, String>(PromotionBuildTokens.class);
+        List<PromotionBuildTokens> templated = new ArrayList<PromotionBuildTokens>();
+        StringBuilder combined = new StringBuilder();
+        for (Map.Entry<PromotionBuildTokens, String> template : templates.entrySet()) {
+            String value = template.getValue();
+            if (value == null || value.indexOf('$') < 0) {
+                expanded.put(template.getKey(), value);
+                continue;
+            }
+            if (!templated.isEmpty()) {
+                combined.append(SEPARATOR);
+            }
+            combined.append(value);
+            templated.add(template.getKey());
+        }
+        if (templated.isEmpty()) {
+            return expanded;
+        }
+
+        String[] parts = TokenMacro.expandAll(build, workspace, listener, combined.toString()).split(SEPARATOR, -1);
+        if (parts.length == templated.size()) {
+            for (int i = 0; i < parts.length; i++) {
+                expanded.put(templated.get(i), parts[i]);
+            }
+        } else {
+            // a macro has swallowed or produced a separator, expand the values one by one
+            for (PromotionBuildTokens token : templated) {
+                expanded.put(token, TokenMacro.expandAll(build, workspace, listener, templates.get(token)));
+            }
+        }
+        return expanded;
+    }
+
+}
@@ -22,6 +22,8 @@
  */
 package org.jenkinsci.plugins.artifactpromotion.exception;
 
+import org.jenkinsci.plugins.artifactpromotion.PromotionMetrics;
+
 public class PromotionException extends Exception {
 
     /**
@@ -29,6 +31,10 @@ public class PromotionException extends Exception {
      */
     private static final long serialVersionUID = 1L;
 
+    /**
+     * The metrics collected until the promotion failed, may be null.
+     */
+    private PromotionMetrics metrics;
 
     public PromotionException(String message) {
         super(message);
@@ -37,4 +43,13 @@ public class PromotionException extends Exception {
     public PromotionException(String message, Throwable e) {
         super(message, e);
     }
+
+    public PromotionMetrics getMetrics() {
+        return metrics;
+    }
+
+    public PromotionException setMetrics(PromotionMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
 }
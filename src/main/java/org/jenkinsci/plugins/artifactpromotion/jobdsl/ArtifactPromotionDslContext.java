@@ -24,6 +24,7 @@ package org.jenkinsci.plugins.artifactpromotion.jobdsl;
 
 import javaposse.jobdsl.dsl.Context;
 
+import org.jenkinsci.plugins.artifactpromotion.ArtifactPromotionHelper;
 import org.jenkinsci.plugins.artifactpromotion.jobdsl.ArtifactPromotionJobDslExtension.RepositorySystem;
 
 /**
@@ -52,6 +53,16 @@ public class ArtifactPromotionDslContext implements Context {
     private boolean debug = false;
     private boolean skipDeletion = true;
 
+    private String artifacts;
+    private int parallelism = ArtifactPromotionHelper.DEFAULT_PARALLELISM;
+    private boolean promoteAttached = false;
+    private boolean streaming = false;
+    private boolean cleanupLocalRepository = false;
+    private boolean deferDeletion = false;
+    private int memoryThreshold = 0;
+    private int retries = ArtifactPromotionHelper.DEFAULT_RETRIES;
+    private int priority = 0;
+
     public void groupId(String groupId) {
         this.groupId = groupId;
     }
@@ -140,4 +151,71 @@ public class ArtifactPromotionDslContext implements Context {
         return skipDeletion;
     }
 
+    public void artifacts(String... coordinates) {
+        StringBuilder builder = new StringBuilder();
+        for (String coordinate : coordinates) {
+            builder.append(coordinate).append('\n');
+        }
+        this.artifacts = builder.toString();
+    }
+    String getArtifacts() {
+        return artifacts;
+    }
+
+    public void parallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+    int getParallelism() {
+        return parallelism;
+    }
+
+    public void promoteAttached(boolean promoteAttached) {
+        this.promoteAttached = promoteAttached;
+    }
+    boolean isPromoteAttachedEnabled() {
+        return promoteAttached;
+    }
+
+    public void streaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+    boolean isStreamingEnabled() {
+        return streaming;
+    }
+
+    public void cleanupLocalRepository(boolean cleanupLocalRepository) {
+        this.cleanupLocalRepository = cleanupLocalRepository;
+    }
+    boolean isCleanupLocalRepositoryEnabled() {
+        return cleanupLocalRepository;
+    }
+
+    public void deferDeletion(boolean deferDeletion) {
+        this.deferDeletion = deferDeletion;
+    }
+    boolean isDeferDeletionEnabled() {
+        return deferDeletion;
+    }
+
+    public void memoryThreshold(int memoryThreshold) {
+        this.memoryThreshold = memoryThreshold;
+    }
+    int getMemoryThreshold() {
+        return memoryThreshold;
+    }
+
+    public void retries(int retries) {
+        this.retries = retries;
+    }
+    int getRetries() {
+        return retries;
+    }
+
+    public void priority(int priority) {
+        this.priority = priority;
+    }
+    int getPriority() {
+        return priority;
+    }
+
 }
@@ -23,6 +23,7 @@
 package org.jenkinsci.plugins.artifactpromotion.jobdsl;
 
 import org.jenkinsci.plugins.artifactpromotion.ArtifactPromotionBuilder;
+import org.jenkinsci.plugins.artifactpromotion.Nexus3Promotor;
 import org.jenkinsci.plugins.artifactpromotion.NexusOSSPromotor;
 
 import hudson.Extension;
@@ -46,16 +47,27 @@ public class ArtifactPromotionJobDslExtension extends ContextExtensionPoint {
         ArtifactPromotionDslContext context = new ArtifactPromotionDslContext();
         executeInContext(closure, context);
 
-        return new ArtifactPromotionBuilder(
+        ArtifactPromotionBuilder builder = new ArtifactPromotionBuilder(
                 context.getGroupId(), context.getArtifactId(), context.getClassifier(), context.getVersion(),
                 context.getExtension(), context.getStagingRepository(), context.getStagingUser(),
                 context.getStagingPassword(), context.getReleaseUser(), context.getReleasePassword(),
                 context.getReleaseRepository(), context.getPromoterClass(), context.isDebugEnabled(),
                 context.isSkipDeletionEnabled());
+        builder.setArtifacts(context.getArtifacts());
+        builder.setParallelism(context.getParallelism());
+        builder.setPromoteAttached(context.isPromoteAttachedEnabled());
+        builder.setStreaming(context.isStreamingEnabled());
+        builder.setCleanupLocalRepository(context.isCleanupLocalRepositoryEnabled());
+        builder.setDeferDeletion(context.isDeferDeletionEnabled());
+        builder.setMemoryThreshold(context.getMemoryThreshold());
+        builder.setRetries(context.getRetries());
+        builder.setPriority(context.getPriority());
+        return builder;
     }
 
     public enum RepositorySystem {
-        NexusOSS(NexusOSSPromotor.class.getName());
+        NexusOSS(NexusOSSPromotor.class.getName()),
+        Nexus3(Nexus3Promotor.class.getName());
 
         private String className;
 
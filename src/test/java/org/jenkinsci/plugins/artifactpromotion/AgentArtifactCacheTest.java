@@ -0,0 +1,121 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Halil-Cem Guersoy and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.artifactpromotion;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AgentArtifactCacheTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * The SHA-1 checksum of "hello".
+     */
+    private static final String HELLO_SHA1 = "aaf4c61ddcc5e8a2dabede0f3b482cd9aea9434d";
+
+    private static final String OTHER_SHA1 = "0123456789abcdef0123456789abcdef01234567";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void keepsTheChecksumInTheCacheDirectory() throws IOException {
+        File file = write("artifact.jar", "hello", System.currentTimeMillis() - 10000);
+        AgentArtifactCache cache = newCache();
+
+        assertEquals(HELLO_SHA1, cache.digest(file));
+        assertFalse(new File(file.getPath() + ".sha1").exists());
+        assertTrue(read(cache.getDigestFile(file)).contains(HELLO_SHA1));
+    }
+
+    @Test
+    public void usesTheIndexOfAnUnchangedFile() throws IOException {
+        long modified = System.currentTimeMillis() - 10000;
+        File file = write("artifact.jar", "hello", modified);
+        AgentArtifactCache cache = newCache();
+        File digestFile = cache.getDigestFile(file);
+        digestFile.getParentFile().mkdirs();
+        // a different checksum proves that the file isn't hashed again
+        Files.write(digestFile.toPath(), ("5 " + modified + " " + OTHER_SHA1 + " " + file.getAbsolutePath())
+                .getBytes(UTF8));
+
+        assertEquals(OTHER_SHA1, cache.digest(file));
+    }
+
+    @Test
+    public void hashesAChangedFileAgain() throws IOException {
+        long modified = System.currentTimeMillis() - 10000;
+        File file = write("artifact.jar", "other", modified);
+        AgentArtifactCache cache = newCache();
+        String before = cache.digest(file);
+
+        write("artifact.jar", "hello", modified + 2000);
+
+        assertTrue(!HELLO_SHA1.equals(before));
+        assertEquals(HELLO_SHA1, cache.digest(file));
+        assertTrue(read(cache.getDigestFile(file)).contains(HELLO_SHA1));
+    }
+
+    @Test
+    public void keepsTheTimeOfTheFilesInTheWorkspace() throws IOException {
+        long modified = System.currentTimeMillis() - 10000;
+        File file = write("artifact.jar", "hello", modified);
+        AgentArtifactCache cache = newCache();
+        Artifact artifact = new DefaultArtifact("org.example", "artifact", "jar", "1.0").setFile(file);
+
+        cache.store(Collections.singletonList(artifact), System.out);
+        cache.store(Collections.singletonList(artifact), System.out);
+
+        assertEquals(modified, file.lastModified());
+    }
+
+    private AgentArtifactCache newCache() throws IOException {
+        return new AgentArtifactCache(folder.newFolder("cache"), Long.MAX_VALUE);
+    }
+
+    private File write(String name, String content, long modified) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        Files.write(file.toPath(), content.getBytes(UTF8));
+        assertTrue(file.setLastModified(modified));
+        return file;
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), UTF8);
+    }
+
+}
@@ -0,0 +1,113 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Halil-Cem Guersoy and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.artifactpromotion;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Closeable;
+
+import org.eclipse.aether.RepositoryCache;
+import org.junit.After;
+import org.junit.Test;
+
+public class AgentSessionCacheTest {
+
+    @After
+    public void tearDown() {
+        AgentSessionCache.clear();
+    }
+
+    @Test
+    public void sharesTheCacheOfTheSameRepositories() {
+        String key = AgentSessionCache.getKey("http://staging", "user", "http://release", "user");
+        RepositoryCache first = AgentSessionCache.acquire(key);
+        RepositoryCache second = AgentSessionCache.acquire(key);
+        RepositoryCache other = AgentSessionCache.acquire(AgentSessionCache.getKey("http://other"));
+        try {
+            assertSame(first, second);
+            assertNotSame(first, other);
+        } finally {
+            AgentSessionCache.release(first);
+            AgentSessionCache.release(second);
+            AgentSessionCache.release(other);
+        }
+    }
+
+    @Test
+    public void hashesTheCredentials() {
+        String hash = AgentSessionCache.hashCredentials("user", "secret");
+
+        assertEquals(64, hash.length());
+        assertFalse(hash.contains("secret"));
+        assertEquals(hash, AgentSessionCache.hashCredentials("user", "secret"));
+        // "Aa" and "BB" have the same String.hashCode()
+        assertFalse(AgentSessionCache.hashCredentials("user", "Aa").equals(
+                AgentSessionCache.hashCredentials("user", "BB")));
+        assertFalse(hash.equals(AgentSessionCache.hashCredentials("other", "secret")));
+    }
+
+    @Test
+    public void closesThePoolsOfAnUnusedCache() {
+        RepositoryCache cache = AgentSessionCache.acquire("unused");
+        Pool pool = new Pool();
+        cache.put(null, "pool", pool);
+        AgentSessionCache.release(cache);
+
+        AgentSessionCache.clear();
+
+        assertTrue(pool.closed);
+        assertNull(cache.get(null, "pool"));
+        assertEquals(0, AgentSessionCache.size());
+    }
+
+    @Test
+    public void closesACacheInUseWhenItIsReleased() {
+        RepositoryCache cache = AgentSessionCache.acquire("in-use");
+        Pool pool = new Pool();
+        cache.put(null, "pool", pool);
+
+        AgentSessionCache.clear();
+        assertFalse(pool.closed);
+        RepositoryCache fresh = AgentSessionCache.acquire("in-use");
+        assertNotSame(cache, fresh);
+        AgentSessionCache.release(fresh);
+
+        AgentSessionCache.release(cache);
+        assertTrue(pool.closed);
+    }
+
+    private static final class Pool implements Closeable {
+
+        private volatile boolean closed;
+
+        public void close() {
+            closed = true;
+        }
+    }
+
+}
@@ -0,0 +1,88 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Halil-Cem Guersoy and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.artifactpromotion;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import hudson.model.Result;
+
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+public class ArtifactPromotionStepTest {
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    private static final Artifact JAR = new DefaultArtifact("org.example", "example", "jar", "1.0");
+
+    private StandInRepositoryServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StandInRepositoryServer();
+        server.put("staging", JAR, "content".getBytes("UTF-8"));
+        server.put("staging", new DefaultArtifact("org.example", "example", "pom", "1.0"),
+                PromotionLoadDriver.pom(JAR).getBytes("UTF-8"));
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void promotesWithoutANode() throws Exception {
+        WorkflowRun run = j.buildAndAssertSuccess(createJob(server.getRepositoryURL("staging"),
+                server.getRepositoryURL("releases")));
+
+        j.assertLogNotContains("is not an HTTP repository", run);
+        assertArrayEquals(server.get("staging", JAR), server.get("releases", JAR));
+    }
+
+    @Test
+    public void rejectsFileRepositoriesWithoutANode() throws Exception {
+        WorkflowJob job = createJob("file:///tmp/staging/", server.getRepositoryURL("releases"));
+
+        WorkflowRun run = j.assertBuildStatus(Result.FAILURE, job.scheduleBuild2(0));
+
+        j.assertLogContains("The repository file:///tmp/staging/ is not an HTTP repository", run);
+    }
+
+    private WorkflowJob createJob(String staging, String release) throws Exception {
+        WorkflowJob job = j.createProject(WorkflowJob.class);
+        job.setDefinition(new CpsFlowDefinition("artifactPromotion groupId: 'org.example', artifactId: 'example', "
+                + "classifier: '', version: '1.0', stagingRepository: '" + staging + "', stagingUser: '', "
+                + "stagingPW: '', releaseUser: '', releasePW: '', releaseRepository: '" + release + "', "
+                + "promoterClass: '" + NexusOSSPromotor.class.getName() + "', debug: false", true));
+        return job;
+    }
+}
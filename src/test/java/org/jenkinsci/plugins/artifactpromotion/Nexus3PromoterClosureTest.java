@@ -0,0 +1,257 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Halil-Cem Guersoy and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.artifactpromotion;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import hudson.model.TaskListener;
+import hudson.util.StreamTaskListener;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.Base64;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jenkinsci.plugins.artifactpromotion.exception.PromotionException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Runs the Nexus 3 promoter against a stand-in server which answers the
+ * search and staging move endpoints like Nexus 3 does.
+ */
+public class Nexus3PromoterClosureTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private Nexus3StandIn nexus;
+
+    private TaskListener listener;
+
+    @Before
+    public void setUp() throws IOException {
+        nexus = new Nexus3StandIn();
+        listener = StreamTaskListener.fromStdout();
+    }
+
+    @After
+    public void tearDown() {
+        nexus.stop();
+    }
+
+    @Test
+    public void movesAllComponents() throws Exception {
+        nexus.add("staging", "org.example:a:1.0");
+        nexus.add("staging", "org.example:b:1.0");
+
+        PromotionMetrics metrics = newClosure("org.example:a:1.0,org.example:b:1.0", null).promote();
+
+        assertTrue(nexus.contains("releases", "org.example:a:1.0"));
+        assertTrue(nexus.contains("releases", "org.example:b:1.0"));
+        assertFalse(nexus.contains("staging", "org.example:a:1.0"));
+        assertEquals(2, metrics.getArtifacts());
+        assertEquals(0, metrics.getFailures());
+        assertEquals(2, nexus.moves.get());
+    }
+
+    @Test
+    public void skipsAlreadyPromotedComponents() throws Exception {
+        nexus.add("releases", "org.example:a:1.0");
+
+        newClosure("org.example:a:1.0", null).promote();
+
+        assertTrue(nexus.contains("releases", "org.example:a:1.0"));
+        assertEquals(0, nexus.moves.get());
+    }
+
+    @Test
+    public void promotesTheOthersAndListsTheFailedCoordinates() throws Exception {
+        nexus.add("staging", "org.example:b:1.0");
+        nexus.add("staging", "org.example:d:1.0");
+
+        try {
+            newClosure("org.example:a:1.0,org.example:b:1.0,org.example:c:1.0,org.example:d:1.0", null)
+                    .promote();
+            fail("missing components must fail the promotion");
+        } catch (PromotionException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("2 of 4 artifacts could not be promoted"));
+            assertTrue(e.getMessage(), e.getMessage().contains("org.example:a:jar:1.0"));
+            assertTrue(e.getMessage(), e.getMessage().contains("org.example:c:jar:1.0"));
+            assertFalse(e.getMessage(), e.getMessage().contains("org.example:b:jar:1.0"));
+            assertEquals(2, e.getMetrics().getFailures());
+        }
+        assertTrue(nexus.contains("releases", "org.example:b:1.0"));
+        assertTrue(nexus.contains("releases", "org.example:d:1.0"));
+    }
+
+    @Test
+    public void rejectsInvalidCredentials() throws Exception {
+        nexus.authorization = "Basic " + Base64.getEncoder().encodeToString("admin:admin123".getBytes(UTF8));
+        nexus.add("staging", "org.example:a:1.0");
+
+        try {
+            newClosure("org.example:a:1.0", "guest").promote();
+            fail("invalid credentials must fail the promotion");
+        } catch (PromotionException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Invalid Username or Password"));
+        }
+        assertTrue(nexus.contains("staging", "org.example:a:1.0"));
+    }
+
+    private Nexus3PromoterClosure newClosure(String artifacts, String user) {
+        Map<PromotionBuildTokens, String> tokens = new EnumMap<PromotionBuildTokens, String>(
+                PromotionBuildTokens.class);
+        tokens.put(PromotionBuildTokens.ARTIFACTS, artifacts);
+        tokens.put(PromotionBuildTokens.STAGING_REPOSITORY, nexus.getURL() + "/repository/staging/");
+        tokens.put(PromotionBuildTokens.RELEASE_REPOSITORY, nexus.getURL() + "/repository/releases/");
+        PromotionRequest request = new PromotionRequest(tokens, null);
+        request.setRelease(user, null);
+        return new Nexus3PromoterClosure(listener, request);
+    }
+
+    /**
+     * Answers the search and the staging move REST endpoints of Nexus 3 out
+     * of an in-memory set of components per repository.
+     */
+    static final class Nexus3StandIn implements HttpHandler {
+
+        private final HttpServer server;
+
+        private final Map<String, Set<String>> components = new HashMap<String, Set<String>>();
+
+        final AtomicInteger moves = new AtomicInteger();
+
+        /**
+         * The expected authorization header, null to accept every request.
+         */
+        volatile String authorization;
+
+        Nexus3StandIn() throws IOException {
+            server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+            server.createContext("/service/rest/v1/", this);
+            server.start();
+        }
+
+        String getURL() {
+            return "http://localhost:" + server.getAddress().getPort();
+        }
+
+        void stop() {
+            server.stop(0);
+        }
+
+        synchronized void add(String repository, String gav) {
+            Set<String> set = components.get(repository);
+            if (set == null) {
+                set = new HashSet<String>();
+                components.put(repository, set);
+            }
+            set.add(gav);
+        }
+
+        synchronized boolean contains(String repository, String gav) {
+            Set<String> set = components.get(repository);
+            return set != null && set.contains(gav);
+        }
+
+        private synchronized boolean remove(String repository, String gav) {
+            Set<String> set = components.get(repository);
+            return set != null && set.remove(gav);
+        }
+
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                if (authorization != null
+                        && !authorization.equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+                    send(exchange, 401, "");
+                    return;
+                }
+                Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+                String gav = query.get("maven.groupId") + ":" + query.get("maven.artifactId") + ":"
+                        + query.get("maven.baseVersion");
+                String path = exchange.getRequestURI().getPath();
+                if (path.equals("/service/rest/v1/search") && "GET".equals(exchange.getRequestMethod())) {
+                    boolean found = contains(query.get("repository"), gav);
+                    send(exchange, 200, found ? "{\"items\":[{\"repository\":\"" + query.get("repository")
+                            + "\",\"format\":\"maven2\"}]}" : "{\"items\":[]}");
+                } else if (path.startsWith("/service/rest/v1/staging/move/")
+                        && "POST".equals(exchange.getRequestMethod())) {
+                    String destination = path.substring("/service/rest/v1/staging/move/".length());
+                    if (!remove(query.get("repository"), gav)) {
+                        send(exchange, 404, "{\"status\":404,\"message\":\"No components found\"}");
+                        return;
+                    }
+                    add(destination, gav);
+                    moves.incrementAndGet();
+                    send(exchange, 200, "{\"status\":200,\"message\":\"Move Successful\"}");
+                } else {
+                    send(exchange, 404, "");
+                }
+            } finally {
+                exchange.close();
+            }
+        }
+
+        private static Map<String, String> parseQuery(String query) throws IOException {
+            Map<String, String> parameters = new HashMap<String, String>();
+            if (query != null) {
+                for (String parameter : query.split("&")) {
+                    int index = parameter.indexOf('=');
+                    if (index > 0) {
+                        parameters.put(URLDecoder.decode(parameter.substring(0, index), "UTF-8"),
+                                URLDecoder.decode(parameter.substring(index + 1), "UTF-8"));
+                    }
+                }
+            }
+            return parameters;
+        }
+
+        private static void send(HttpExchange exchange, int status, String body) throws IOException {
+            byte[] bytes = body.getBytes(UTF8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+            if (bytes.length > 0) {
+                OutputStream out = exchange.getResponseBody();
+                out.write(bytes);
+                out.close();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,243 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Halil-Cem Guersoy and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.artifactpromotion;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import hudson.Util;
+import hudson.util.Secret;
+import hudson.util.StreamTaskListener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.jenkinsci.plugins.artifactpromotion.exception.PromotionException;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+public class NexusOSSPromoterClosureTest {
+
+    @ClassRule
+    public static JenkinsRule j = new JenkinsRule();
+
+    private static final Artifact JAR = new DefaultArtifact("org.example", "example", "jar", "1.0");
+
+    private static final Artifact POM = new DefaultArtifact("org.example", "example", "pom", "1.0");
+
+    private static long retryDelay;
+
+    private StandInRepositoryServer server;
+
+    private File localRepository;
+
+    private ByteArrayOutputStream log;
+
+    @BeforeClass
+    public static void shortenRetryDelay() {
+        retryDelay = NexusOSSPromoterClosure.retryDelay;
+        NexusOSSPromoterClosure.retryDelay = 10;
+    }
+
+    @AfterClass
+    public static void restoreRetryDelay() {
+        NexusOSSPromoterClosure.retryDelay = retryDelay;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StandInRepositoryServer();
+        localRepository = Files.createTempDirectory("promotion").toFile();
+        log = new ByteArrayOutputStream();
+        server.put("staging", JAR, "content".getBytes("UTF-8"));
+        server.put("staging", POM, PromotionLoadDriver.pom(JAR).getBytes("UTF-8"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.close();
+        Util.deleteRecursive(localRepository);
+    }
+
+    @Test
+    public void deploysTheMissingPomOfAnArtifactDeployedByAnEarlierAttempt() throws Exception {
+        // the POM check and the deployment of the POM fail, the artifact itself is deployed
+        server.failNext("releases", RemoteRepositoryAccess.getPath(POM), 2);
+
+        newClosure(false).promote();
+
+        assertArrayEquals(server.get("staging", JAR), server.get("releases", JAR));
+        assertArrayEquals(server.get("staging", POM), server.get("releases", POM));
+        assertTrue(getLog(), getLog().contains("Skipping " + JAR));
+    }
+
+    @Test
+    public void comparesTheChecksumsAgainOnARetry() throws Exception {
+        // the streamed artifact is deployed, the deployment of the POM fails once
+        server.failNext("releases", RemoteRepositoryAccess.getPath(POM), 1);
+
+        newClosure(true).promote();
+
+        assertArrayEquals(server.get("staging", JAR), server.get("releases", JAR));
+        assertArrayEquals(server.get("staging", POM), server.get("releases", POM));
+        assertTrue(getLog(), getLog().contains("Skipping " + JAR));
+    }
+
+    @Test
+    public void replacesADifferentArtifactInTheReleaseRepository() throws Exception {
+        server.put("releases", JAR, "outdated".getBytes("UTF-8"));
+        server.put("releases", POM, server.get("staging", POM));
+
+        newClosure(false).promote();
+
+        assertArrayEquals(server.get("staging", JAR), server.get("releases", JAR));
+    }
+
+    @Test
+    public void retriesAFailedDownload() throws Exception {
+        server.failNext("staging", RemoteRepositoryAccess.getPath(JAR), 1);
+
+        newClosure(false).promote();
+
+        assertArrayEquals(server.get("staging", JAR), server.get("releases", JAR));
+        assertTrue(getLog(), getLog().contains("retry 1 of 1"));
+    }
+
+    @Test
+    public void givesUpAfterTheRetries() throws Exception {
+        server.failNext("staging", RemoteRepositoryAccess.getPath(JAR), 3);
+        PromotionRequest request = newRequest(false);
+        request.setRetries(2);
+
+        try {
+            new NexusOSSPromoterClosure(new StreamTaskListener(log), request).promote();
+            fail("promoted although every attempt failed");
+        } catch (PromotionException e) {
+            assertEquals(2, e.getMetrics().getRetries());
+        }
+        assertTrue(getLog(), getLog().contains("retry 2 of 2"));
+        assertFalse(server.contains("releases", JAR));
+    }
+
+    @Test
+    public void increasesTheDelayWithEveryRetry() throws Exception {
+        server.failNext("staging", RemoteRepositoryAccess.getPath(JAR), 2);
+        PromotionRequest request = newRequest(false);
+        request.setRetries(2);
+        NexusOSSPromoterClosure.retryDelay = 200;
+        try {
+            long start = System.currentTimeMillis();
+            new NexusOSSPromoterClosure(new StreamTaskListener(log), request).promote();
+
+            // 200 ms before the first and 400 ms before the second retry
+            assertTrue(System.currentTimeMillis() - start >= 600);
+        } finally {
+            NexusOSSPromoterClosure.retryDelay = 10;
+        }
+    }
+
+    @Test
+    public void doesNotRetryAMissingArtifact() throws Exception {
+        server.remove("staging", JAR);
+
+        try {
+            newClosure(false).promote();
+            fail("promoted a missing artifact");
+        } catch (PromotionException e) {
+            assertEquals(0, e.getMetrics().getRetries());
+        }
+        assertFalse(getLog(), getLog().contains("retry"));
+    }
+
+    @Test
+    public void acceptsAPromotedAndDeletedArtifactIfResumed() throws Exception {
+        moveToReleases();
+        PromotionRequest request = newRequest(false);
+        request.setResumed(true);
+
+        new NexusOSSPromoterClosure(new StreamTaskListener(log), request).promote();
+
+        assertTrue(getLog(), getLog().contains("no longer staged"));
+    }
+
+    @Test
+    public void requiresTheStagedArtifactIfNotResumed() throws Exception {
+        moveToReleases();
+        try {
+            newClosure(false).promote();
+            fail("promoted an artifact which isn't staged");
+        } catch (PromotionException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Leaves the state of a promotion interrupted after the deletion.
+     */
+    private void moveToReleases() {
+        server.put("releases", JAR, server.get("staging", JAR));
+        server.put("releases", POM, server.get("staging", POM));
+        server.remove("staging", JAR);
+        server.remove("staging", POM);
+    }
+
+    private NexusOSSPromoterClosure newClosure(boolean streaming) {
+        return new NexusOSSPromoterClosure(new StreamTaskListener(log), newRequest(streaming));
+    }
+
+    private PromotionRequest newRequest(boolean streaming) {
+        Map<PromotionBuildTokens, String> tokens = new EnumMap<PromotionBuildTokens, String>(
+                PromotionBuildTokens.class);
+        tokens.put(PromotionBuildTokens.GROUP_ID, JAR.getGroupId());
+        tokens.put(PromotionBuildTokens.ARTIFACT_ID, JAR.getArtifactId());
+        tokens.put(PromotionBuildTokens.VERSION, JAR.getVersion());
+        tokens.put(PromotionBuildTokens.EXTENSION, JAR.getExtension());
+        tokens.put(PromotionBuildTokens.CLASSIFIER, "");
+        tokens.put(PromotionBuildTokens.STAGING_REPOSITORY, server.getRepositoryURL("staging"));
+        tokens.put(PromotionBuildTokens.RELEASE_REPOSITORY, server.getRepositoryURL("releases"));
+        PromotionRequest request = new PromotionRequest(tokens, localRepository.getPath());
+        request.setStaging("", Secret.fromString(""));
+        request.setRelease("", Secret.fromString(""));
+        request.setStreaming(streaming);
+        request.setSkipDeletion(true);
+        request.setRetries(1);
+        return request;
+    }
+
+    private String getLog() throws Exception {
+        return log.toString("UTF-8");
+    }
+}
@@ -0,0 +1,254 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Halil-Cem Guersoy and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.artifactpromotion;
+
+import hudson.Util;
+import hudson.model.TaskListener;
+import hudson.util.Secret;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.jenkinsci.plugins.artifactpromotion.exception.PromotionException;
+
+
+/**
+ * Runs many promotions concurrently against a {@link StandInRepositoryServer}
+ * and reports the throughput, the latency percentiles of the promotions and
+ * the number of requests the server has answered. Every promotion promotes
+ * its own artifact and POM, which are staged before the run.
+ */
+public final class PromotionLoadDriver {
+
+    private final StandInRepositoryServer server;
+
+    private int promotions = 20;
+
+    private int concurrency = 4;
+
+    private int artifactSize = 64 * 1024;
+
+    private boolean streaming;
+
+    private boolean skipDeletion;
+
+    public PromotionLoadDriver(StandInRepositoryServer server) {
+        this.server = server;
+    }
+
+    public PromotionLoadDriver setPromotions(int promotions) {
+        this.promotions = promotions;
+        return this;
+    }
+
+    public PromotionLoadDriver setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+        return this;
+    }
+
+    /**
+     * @param artifactSize the size of every promoted artifact in bytes.
+     */
+    public PromotionLoadDriver setArtifactSize(int artifactSize) {
+        this.artifactSize = artifactSize;
+        return this;
+    }
+
+    public PromotionLoadDriver setStreaming(boolean streaming) {
+        this.streaming = streaming;
+        return this;
+    }
+
+    public PromotionLoadDriver setSkipDeletion(boolean skipDeletion) {
+        this.skipDeletion = skipDeletion;
+        return this;
+    }
+
+    /**
+     * Stages the artifacts, runs the promotions and collects the results.
+     */
+    public Result run() throws IOException, InterruptedException {
+        Random random = new Random(42);
+        List<Artifact> artifacts = new ArrayList<Artifact>(promotions);
+        for (int i = 0; i < promotions; i++) {
+            Artifact artifact = new DefaultArtifact("org.example.load", "artifact-" + i, "jar", "1.0");
+            byte[] content = new byte[artifactSize];
+            random.nextBytes(content);
+            server.put("staging", artifact, content);
+            server.put("staging", new DefaultArtifact("org.example.load", "artifact-" + i, "pom", "1.0"),
+                    pom(artifact).getBytes("UTF-8"));
+            artifacts.add(artifact);
+        }
+        server.resetRequestCounts();
+
+        final File localRepository = Files.createTempDirectory("promotion-load").toFile();
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        long start = System.nanoTime();
+        try {
+            List<Future<Long>> results = new ArrayList<Future<Long>>(promotions);
+            for (final Artifact artifact : artifacts) {
+                results.add(executor.submit(new Callable<Long>() {
+                    public Long call() throws PromotionException {
+                        long started = System.nanoTime();
+                        newClosure(artifact, localRepository).promote();
+                        return System.nanoTime() - started;
+                    }
+                }));
+            }
+            long[] latencies = new long[promotions];
+            int failures = 0;
+            for (int i = 0; i < promotions; i++) {
+                try {
+                    latencies[i] = results.get(i).get();
+                } catch (ExecutionException e) {
+                    failures++;
+                    latencies[i] = -1;
+                }
+            }
+            return new Result(latencies, failures, System.nanoTime() - start, (long) promotions * artifactSize,
+                    server.getRequestCounts());
+        } finally {
+            executor.shutdownNow();
+            Util.deleteRecursive(localRepository);
+        }
+    }
+
+    private NexusOSSPromoterClosure newClosure(Artifact artifact, File localRepository) {
+        Map<PromotionBuildTokens, String> tokens = new EnumMap<PromotionBuildTokens, String>(
+                PromotionBuildTokens.class);
+        tokens.put(PromotionBuildTokens.GROUP_ID, artifact.getGroupId());
+        tokens.put(PromotionBuildTokens.ARTIFACT_ID, artifact.getArtifactId());
+        tokens.put(PromotionBuildTokens.VERSION, artifact.getVersion());
+        tokens.put(PromotionBuildTokens.EXTENSION, artifact.getExtension());
+        tokens.put(PromotionBuildTokens.CLASSIFIER, "");
+        tokens.put(PromotionBuildTokens.STAGING_REPOSITORY, server.getRepositoryURL("staging"));
+        tokens.put(PromotionBuildTokens.RELEASE_REPOSITORY, server.getRepositoryURL("releases"));
+        PromotionRequest request = new PromotionRequest(tokens, localRepository.getPath());
+        request.setStaging("", Secret.fromString(""));
+        request.setRelease("", Secret.fromString(""));
+        request.setStreaming(streaming);
+        request.setSkipDeletion(skipDeletion);
+        return new NexusOSSPromoterClosure(TaskListener.NULL, request);
+    }
+
+    static String pom(Artifact artifact) {
+        return "<project xmlns=\"http://maven.apache.org/POM/4.0.0\">\n"
+                + "  <modelVersion>4.0.0</modelVersion>\n"
+                + "  <groupId>" + artifact.getGroupId() + "</groupId>\n"
+                + "  <artifactId>" + artifact.getArtifactId() + "</artifactId>\n"
+                + "  <version>" + artifact.getVersion() + "</version>\n"
+                + "</project>\n";
+    }
+
+    /**
+     * The outcome of a load test run.
+     */
+    public static final class Result {
+
+        private final long[] latencies;
+
+        private final int failures;
+
+        private final long wallNanos;
+
+        private final long bytes;
+
+        private final Map<String, Integer> requests;
+
+        Result(long[] latencies, int failures, long wallNanos, long bytes, Map<String, Integer> requests) {
+            long[] succeeded = new long[latencies.length - failures];
+            int i = 0;
+            for (long latency : latencies) {
+                if (latency >= 0) {
+                    succeeded[i++] = latency;
+                }
+            }
+            Arrays.sort(succeeded);
+            this.latencies = succeeded;
+            this.failures = failures;
+            this.wallNanos = wallNanos;
+            this.bytes = bytes;
+            this.requests = Collections.unmodifiableMap(requests);
+        }
+
+        public int getSucceeded() {
+            return latencies.length;
+        }
+
+        public int getFailures() {
+            return failures;
+        }
+
+        /**
+         * @return the promotions per second.
+         */
+        public double getThroughput() {
+            return latencies.length * 1e9 / Math.max(1, wallNanos);
+        }
+
+        /**
+         * @param percentile e.g. 99 for the 99th percentile.
+         * @return the latency of a promotion in ms, -1 if none succeeded.
+         */
+        public double getLatencyMillis(double percentile) {
+            if (latencies.length == 0) {
+                return -1;
+            }
+            int index = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+            return latencies[Math.max(0, Math.min(index, latencies.length - 1))] / 1e6;
+        }
+
+        /**
+         * @return the number of requests by HTTP method.
+         */
+        public Map<String, Integer> getRequests() {
+            return requests;
+        }
+
+        public void print(PrintStream out) {
+            out.printf("%d promotions (%d failed) in %.1f s: %.2f promotions/s, %.2f MB/s%n",
+                    latencies.length + failures, failures, wallNanos / 1e9, getThroughput(),
+                    bytes / 1048576.0 / Math.max(1e-9, wallNanos / 1e9));
+            out.printf("latency ms: p50 %.1f, p90 %.1f, p99 %.1f, max %.1f%n", getLatencyMillis(50),
+                    getLatencyMillis(90), getLatencyMillis(99), getLatencyMillis(100));
+            out.println("requests: " + requests);
+        }
+    }
+
+}
@@ -0,0 +1,81 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Halil-Cem Guersoy and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.artifactpromotion;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+/**
+ * Runs the {@link PromotionLoadDriver} against the stand-in server. The run
+ * is small by default, a real load test is started with e.g.
+ * <code>mvn test -Dtest=PromotionLoadTest -Dpromotions=1000 -Dconcurrency=32
+ * -DartifactSize=1048576 -Dlatency=20 -Dbandwidth=10485760</code>.
+ */
+public class PromotionLoadTest {
+
+    @ClassRule
+    public static JenkinsRule j = new JenkinsRule();
+
+    private StandInRepositoryServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StandInRepositoryServer()
+                .setLatency(Long.getLong("latency", 0))
+                .setBandwidth(Long.getLong("bandwidth", 0));
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void promotesConcurrently() throws Exception {
+        int promotions = Integer.getInteger("promotions", 20);
+        PromotionLoadDriver.Result result = new PromotionLoadDriver(server)
+                .setPromotions(promotions)
+                .setConcurrency(Integer.getInteger("concurrency", 4))
+                .setArtifactSize(Integer.getInteger("artifactSize", 64 * 1024))
+                .setStreaming(Boolean.getBoolean("streaming"))
+                .run();
+        result.print(System.out);
+
+        assertEquals(0, result.getFailures());
+        assertEquals(promotions, result.getSucceeded());
+        assertTrue(server.contains("releases", new DefaultArtifact("org.example.load", "artifact-0", "jar", "1.0")));
+        assertFalse(server.contains("staging", new DefaultArtifact("org.example.load", "artifact-0", "jar", "1.0")));
+        // every version is deleted from the staging repository with one request
+        assertEquals(promotions, server.getRequestCount("DELETE"));
+        assertTrue(result.getLatencyMillis(50) <= result.getLatencyMillis(99));
+    }
+
+}
@@ -0,0 +1,77 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Halil-Cem Guersoy and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.artifactpromotion;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+public class PromotionMetricsTest {
+
+    @Test
+    public void keepsTheSingleDurationsBesidesTheSums() {
+        PromotionMetrics metrics = new PromotionMetrics();
+        long now = System.currentTimeMillis();
+        metrics.addDeployTime(now - 100);
+        metrics.addDeployTime(now - 300);
+
+        long[] deploys = metrics.getSamples().get("deploy");
+        assertEquals(2, deploys.length);
+        assertEquals(deploys[0] + deploys[1], metrics.getDeployMillis());
+        assertEquals(0, metrics.getSamples().get("resolve").length);
+    }
+
+    @Test
+    public void limitsTheSamplesButNotTheSum() {
+        PromotionMetrics metrics = new PromotionMetrics();
+        for (int i = 0; i < PromotionMetrics.MAX_SAMPLES + 10; i++) {
+            metrics.addResolveTime(System.currentTimeMillis());
+        }
+        assertEquals(PromotionMetrics.MAX_SAMPLES, metrics.getSamples().get("resolve").length);
+    }
+
+    @Test
+    public void basesTheThroughputOnTheWallClockTime() {
+        PromotionMetrics metrics = new PromotionMetrics();
+        long now = System.currentTimeMillis();
+        // two artifacts deployed in parallel within the same second
+        metrics.addDeployTime(now - 1000);
+        metrics.addDeployTime(now - 1000);
+        metrics.addBytesUploaded(2048 * 1024);
+        metrics.setPromotionTime(System.currentTimeMillis() - 1000);
+
+        long throughput = metrics.getThroughput();
+        // about 2 MB/sec, not the 1 MB/sec of the summed phases
+        assertEquals(2048, throughput, 100);
+    }
+
+    @Test
+    public void listsThePhasesInOrder() {
+        Map<String, long[]> samples = new PromotionMetrics().getSamples();
+        assertArrayEquals(new String[] { "resolve", "pomCheck", "deploy", "delete", "artifact" },
+                samples.keySet().toArray(new String[0]));
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Halil-Cem Guersoy and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.artifactpromotion;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import hudson.util.Secret;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+public class PromotionRequestTest {
+
+    @ClassRule
+    public static JenkinsRule j = new JenkinsRule();
+
+    @Test
+    public void survivesTheSerialization() throws Exception {
+        Map<PromotionBuildTokens, String> tokens = new EnumMap<PromotionBuildTokens, String>(
+                PromotionBuildTokens.class);
+        tokens.put(PromotionBuildTokens.GROUP_ID, "org.example");
+        tokens.put(PromotionBuildTokens.ARTIFACT_ID, "example");
+        tokens.put(PromotionBuildTokens.VERSION, "1.0");
+        tokens.put(PromotionBuildTokens.STAGING_REPOSITORY, "https://nexus.example.com/staging/");
+        tokens.put(PromotionBuildTokens.RELEASE_REPOSITORY, "https://nexus.example.com/releases/");
+        tokens.put(PromotionBuildTokens.ARTIFACTS, "org.example:b:1.0\näöü:c:2.0");
+        PromotionRequest request = new PromotionRequest(tokens, "/tmp/local-repo");
+        request.setStaging("stager", Secret.fromString("staging-secret"));
+        request.setRelease("releaser", Secret.fromString("release-secret"));
+        request.setSkipDeletion(true);
+        request.setStreaming(true);
+        request.setDeferDeletion(true);
+        request.setResumed(true);
+        request.setParallelism(16);
+        request.setMemoryThreshold(4096);
+        request.setRetries(3);
+
+        PromotionRequest copy = roundTrip(request);
+
+        for (PromotionBuildTokens token : PromotionBuildTokens.values()) {
+            assertEquals(token.name(), request.getToken(token), copy.getToken(token));
+        }
+        assertNull(copy.getToken(PromotionBuildTokens.CLASSIFIER));
+        assertEquals("/tmp/local-repo", copy.getLocalRepositoryURL());
+        assertEquals("stager", copy.getStagingUser());
+        assertEquals("staging-secret", Secret.toString(copy.getStagingPassword()));
+        assertEquals("releaser", copy.getReleaseUser());
+        assertEquals("release-secret", Secret.toString(copy.getReleasePassword()));
+        assertTrue(copy.isSkipDeletion());
+        assertFalse(copy.isDebug());
+        assertFalse(copy.isPromoteAttached());
+        assertTrue(copy.isStreaming());
+        assertFalse(copy.isCleanupLocalRepository());
+        assertTrue(copy.isDeferDeletion());
+        assertTrue(copy.isResumed());
+        assertEquals(16, copy.getParallelism());
+        assertEquals(4096, copy.getMemoryThreshold());
+        assertEquals(3, copy.getRetries());
+    }
+
+    @Test
+    public void keepsValuesLongerThan64KB() throws Exception {
+        PromotionRequest request = new PromotionRequest(batch(5000), null);
+
+        PromotionRequest copy = roundTrip(request);
+
+        assertEquals(request.getToken(PromotionBuildTokens.ARTIFACTS), copy.getToken(PromotionBuildTokens.ARTIFACTS));
+        assertNull(copy.getLocalRepositoryURL());
+    }
+
+    /**
+     * The request is sent with every promotion, its size is dominated by the
+     * coordinates of a batch and not by the overhead of the serialization.
+     */
+    @Test
+    public void addsLittleToTheCoordinates() throws Exception {
+        Map<PromotionBuildTokens, String> tokens = batch(1000);
+        PromotionRequest request = new PromotionRequest(tokens, "/tmp/local-repo");
+        request.setStaging("stager", Secret.fromString("staging-secret"));
+        request.setRelease("releaser", Secret.fromString("release-secret"));
+
+        int coordinates = tokens.get(PromotionBuildTokens.ARTIFACTS).length();
+        int size = serialize(request).length;
+
+        assertTrue("request of " + size + " bytes for " + coordinates + " bytes of coordinates",
+                size < coordinates + 2048);
+    }
+
+    private static Map<PromotionBuildTokens, String> batch(int count) {
+        StringBuilder artifacts = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            artifacts.append("org.example.batch:artifact-").append(i).append(":1.0.").append(i).append('\n');
+        }
+        Map<PromotionBuildTokens, String> tokens = new EnumMap<PromotionBuildTokens, String>(
+                PromotionBuildTokens.class);
+        tokens.put(PromotionBuildTokens.ARTIFACTS, artifacts.toString());
+        tokens.put(PromotionBuildTokens.STAGING_REPOSITORY, "https://nexus.example.com/staging/");
+        tokens.put(PromotionBuildTokens.RELEASE_REPOSITORY, "https://nexus.example.com/releases/");
+        return tokens;
+    }
+
+    private static byte[] serialize(PromotionRequest request) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(request);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static PromotionRequest roundTrip(PromotionRequest request) throws Exception {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialize(request)));
+        try {
+            return (PromotionRequest) in.readObject();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Halil-Cem Guersoy and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.artifactpromotion;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+public class PromotionSchedulerTest {
+
+    @ClassRule
+    public static JenkinsRule j = new JenkinsRule();
+
+    private static final String REPOSITORY = "https://scheduler.example.com/releases/";
+
+    private final BlockingQueue<String> started = new LinkedBlockingQueue<String>();
+
+    private final List<PromotionScheduler.Slot> slots = new ArrayList<PromotionScheduler.Slot>();
+
+    @Before
+    public void setUp() {
+        setLimit(1);
+    }
+
+    @After
+    public void tearDown() {
+        for (PromotionScheduler.Slot slot : slots) {
+            PromotionScheduler.getInstance().release(slot);
+        }
+    }
+
+    @Test
+    public void startsTheHigherPriorityFirst() throws Exception {
+        PromotionScheduler.Slot running = schedule("running", 0, "a", "a/one");
+        assertStarted("running");
+        schedule("normal", 0, "b", "b/two");
+        schedule("hotfix", 5, "a", "a/one");
+        assertNull(started.poll(100, TimeUnit.MILLISECONDS));
+
+        PromotionScheduler.getInstance().release(running);
+
+        assertStarted("hotfix");
+        assertNull(started.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void startsTheFolderWithFewerRunningPromotionsFirst() throws Exception {
+        setLimit(2);
+        PromotionScheduler.Slot first = schedule("a1", 0, "a", "a/one");
+        schedule("a2", 0, "a", "a/two");
+        assertStarted("a1", "a2");
+        schedule("a3", 0, "a", "a/three");
+        schedule("b1", 0, "b", "b/one");
+
+        PromotionScheduler.getInstance().release(first);
+
+        // a2 is still running in folder a
+        assertStarted("b1");
+    }
+
+    @Test
+    public void startsTheJobWithFewerRunningPromotionsFirst() throws Exception {
+        setLimit(2);
+        schedule("one", 0, "a", "a/one");
+        PromotionScheduler.Slot other = schedule("other", 0, "b", "b/other");
+        assertStarted("one", "other");
+        schedule("one again", 0, "a", "a/one");
+        schedule("two", 0, "a", "a/two");
+
+        PromotionScheduler.getInstance().release(other);
+
+        // both are in folder a, but a/one is still running
+        assertStarted("two");
+    }
+
+    @Test
+    public void startsEqualPromotionsInTheOrderOfArrival() throws Exception {
+        PromotionScheduler.Slot running = schedule("running", 0, "a", "a/one");
+        assertStarted("running");
+        PromotionScheduler.Slot first = schedule("first", 0, "b", "b/one");
+        schedule("second", 0, "c", "c/one");
+
+        PromotionScheduler.getInstance().release(running);
+        assertStarted("first");
+        PromotionScheduler.getInstance().release(first);
+        assertStarted("second");
+    }
+
+    @Test
+    public void removesACancelledPromotionFromTheQueue() throws Exception {
+        PromotionScheduler.Slot running = schedule("running", 0, "a", "a/one");
+        assertStarted("running");
+        PromotionScheduler.Slot cancelled = schedule("cancelled", 5, "b", "b/one");
+        schedule("waiting", 0, "c", "c/one");
+
+        PromotionScheduler.getInstance().release(cancelled);
+        PromotionScheduler.getInstance().release(running);
+
+        assertStarted("waiting");
+    }
+
+    private PromotionScheduler.Slot schedule(final String name, int priority, String folder, String job) {
+        PromotionScheduler.Slot slot = PromotionScheduler.getInstance().schedule(REPOSITORY, priority, folder, job,
+                new Runnable() {
+                    public void run() {
+                        started.add(name);
+                    }
+                });
+        slots.add(slot);
+        return slot;
+    }
+
+    private void assertStarted(String name) throws InterruptedException {
+        assertEquals(name, started.poll(10, TimeUnit.SECONDS));
+    }
+
+    /**
+     * The promotions granted together are started concurrently, in any order.
+     */
+    private void assertStarted(String... names) throws InterruptedException {
+        Set<String> actual = new HashSet<String>();
+        for (int i = 0; i < names.length; i++) {
+            actual.add(started.poll(10, TimeUnit.SECONDS));
+        }
+        assertEquals(new HashSet<String>(Arrays.asList(names)), actual);
+    }
+
+    private static void setLimit(int limit) {
+        j.jenkins.getDescriptorByType(ArtifactPromotionBuilder.ArtifactPromotionDescriptorImpl.class)
+                .setHostLimits("scheduler.example.com=" + limit);
+    }
+}
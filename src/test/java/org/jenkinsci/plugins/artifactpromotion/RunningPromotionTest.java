@@ -0,0 +1,128 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Halil-Cem Guersoy and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.artifactpromotion;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import hudson.FilePath;
+import hudson.model.TaskListener;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jenkinsci.plugins.artifactpromotion.exception.PromotionException;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+public class RunningPromotionTest {
+
+    @ClassRule
+    public static JenkinsRule j = new JenkinsRule();
+
+    @Test
+    public void runsTheCallbackOnceThePromotionHasFinished() throws Exception {
+        final CountDownLatch proceed = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(1);
+        RunningPromotion promotion = newPromotion();
+        promotion.whenDone(new Runnable() {
+            public void run() {
+                finished.countDown();
+            }
+        });
+
+        promotion.launch(FilePath.localChannel, new RemotePromoter(new IPromotorClosure() {
+            public PromotionMetrics promote() throws PromotionException {
+                try {
+                    proceed.await();
+                } catch (InterruptedException e) {
+                    throw new PromotionException("interrupted", e);
+                }
+                return new PromotionMetrics();
+            }
+        }));
+        assertFalse(finished.await(200, TimeUnit.MILLISECONDS));
+
+        proceed.countDown();
+        assertTrue(finished.await(10, TimeUnit.SECONDS));
+        assertTrue(promotion.isDone());
+        promotion.get();
+    }
+
+    @Test
+    public void runsALateCallbackRightAway() throws Exception {
+        RunningPromotion promotion = newPromotion();
+        promotion.cancel();
+        promotion.launch(FilePath.localChannel, new RemotePromoter(new IPromotorClosure() {
+            public PromotionMetrics promote() {
+                return new PromotionMetrics();
+            }
+        }));
+
+        final AtomicInteger calls = new AtomicInteger();
+        promotion.whenDone(new Runnable() {
+            public void run() {
+                calls.incrementAndGet();
+            }
+        });
+        assertEquals(1, calls.get());
+        try {
+            promotion.get();
+            fail("the cancelled promotion succeeded");
+        } catch (PromotionException e) {
+            assertEquals("Promotion has been cancelled", e.getMessage());
+        }
+    }
+
+    @Test
+    public void reportsTheFailureToTheCallback() throws Exception {
+        final CountDownLatch finished = new CountDownLatch(1);
+        RunningPromotion promotion = newPromotion();
+        promotion.whenDone(new Runnable() {
+            public void run() {
+                finished.countDown();
+            }
+        });
+
+        promotion.launch(FilePath.localChannel, new RemotePromoter(new IPromotorClosure() {
+            public PromotionMetrics promote() throws PromotionException {
+                throw new PromotionException("broken");
+            }
+        }));
+        assertTrue(finished.await(10, TimeUnit.SECONDS));
+        try {
+            promotion.get();
+            fail("the failed promotion succeeded");
+        } catch (PromotionException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("broken"));
+        }
+    }
+
+    private static RunningPromotion newPromotion() {
+        return new RunningPromotion(TaskListener.NULL, "TestPromotor", "file:/releases", false);
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Halil-Cem Guersoy and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.artifactpromotion;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.maven.repository.internal.MavenRepositorySystemUtils;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.repository.LocalRepository;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SegmentedDownloadTest {
+
+    private static final Artifact ARTIFACT = new DefaultArtifact("org.example", "large", "jar", "1.0");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private StandInRepositoryServer server;
+
+    private DefaultRepositorySystemSession session;
+
+    private RemoteRepository staging;
+
+    private byte[] content;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StandInRepositoryServer();
+        staging = new RemoteRepository.Builder("staging", "default", server.getRepositoryURL("staging")).build();
+        RepositorySystem system = RepositorySystemFactory.getNewRepositorySystem(System.out);
+        session = MavenRepositorySystemUtils.newSession();
+        session.setLocalRepositoryManager(system.newLocalRepositoryManager(session,
+                new LocalRepository(folder.newFolder("local-repo"))));
+        // not a multiple of the segment count, so the last segment is shorter
+        content = new byte[1000003];
+        new Random(1).nextBytes(content);
+        server.put("staging", ARTIFACT, content);
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void reassemblesTheSegments() throws Exception {
+        assertEquals(1, new SegmentedDownload(1024, 4).prefetch(session, staging, artifacts(), System.out));
+
+        assertArrayEquals(content, Files.readAllBytes(getLocalFile().toPath()));
+        assertEquals(1, server.getRequestCount("HEAD"));
+        // four segments and the checksum
+        assertEquals(5, server.getRequestCount("GET"));
+    }
+
+    @Test
+    public void discardsTheFileOnAChecksumMismatch() throws Exception {
+        server.put("staging", RemoteRepositoryAccess.getPath(ARTIFACT) + ".sha1",
+                "0123456789abcdef0123456789abcdef01234567".getBytes(Charset.forName("UTF-8")));
+
+        assertEquals(0, new SegmentedDownload(1024, 4).prefetch(session, staging, artifacts(), System.out));
+
+        assertFalse(getLocalFile().exists());
+        assertFalse(new File(getLocalFile().getPath() + ".segments").exists());
+    }
+
+    @Test
+    public void leavesSmallArtifactsToAether() throws Exception {
+        assertEquals(0, new SegmentedDownload(content.length + 1, 4).prefetch(session, staging, artifacts(),
+                System.out));
+
+        assertFalse(getLocalFile().exists());
+        assertEquals(0, server.getRequestCount("GET"));
+    }
+
+    @Test
+    public void leavesArtifactsToAetherIfTheServerIgnoresRanges() throws Exception {
+        server.setRanges(false);
+
+        assertEquals(0, new SegmentedDownload(1024, 4).prefetch(session, staging, artifacts(), System.out));
+
+        assertFalse(getLocalFile().exists());
+        assertEquals(0, server.getRequestCount("GET"));
+    }
+
+    private static List<Artifact> artifacts() {
+        return Collections.singletonList(ARTIFACT);
+    }
+
+    private File getLocalFile() {
+        return new File(session.getLocalRepository().getBasedir(),
+                session.getLocalRepositoryManager().getPathForLocalArtifact(ARTIFACT));
+    }
+
+}
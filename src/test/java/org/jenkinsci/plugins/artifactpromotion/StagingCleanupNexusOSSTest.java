@@ -0,0 +1,164 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Halil-Cem Guersoy and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.artifactpromotion;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import hudson.Util;
+import hudson.util.StreamTaskListener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.jenkinsci.plugins.artifactpromotion.exception.PromotionException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StagingCleanupNexusOSSTest {
+
+    private File repository;
+
+    private File artifactDirectory;
+
+    private ByteArrayOutputStream log;
+
+    @Before
+    public void setUp() throws Exception {
+        repository = Files.createTempDirectory("staging").toFile();
+        artifactDirectory = new File(repository, "org/example/example");
+        log = new ByteArrayOutputStream();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Util.deleteRecursive(repository);
+    }
+
+    @Test
+    public void keepsTheNewestVersions() throws Exception {
+        stage("1.1", 1);
+        stage("1.2", 2);
+        stage("1.3", 3);
+        stage("1.4", 4);
+
+        cleanup(2, 0, false);
+
+        assertRemaining("1.1", "1.2");
+    }
+
+    @Test
+    public void deletesTheVersionsOlderThanTheMaximumAge() throws Exception {
+        stage("1.1", 1);
+        stage("1.2", 2);
+        stage("1.5", 5);
+        stage("1.6", 6);
+
+        cleanup(0, 3, false);
+
+        assertRemaining("1.1", "1.2");
+    }
+
+    @Test
+    public void deletesAVersionBeyondTheCountOrTooOld() throws Exception {
+        stage("1.1", 1);
+        stage("1.3", 3);
+        stage("1.4", 4);
+        stage("1.5", 5);
+        stage("1.6", 6);
+
+        cleanup(3, 2, false);
+
+        // 1.5 and 1.6 exceed the count, 1.3 and 1.4 the age
+        assertRemaining("1.1");
+    }
+
+    @Test
+    public void keepsTheVersionsOfUnknownAge() throws Exception {
+        stage("1.1", 1);
+        stage("1.2", 2);
+        File unknown = stage("1.3", 3);
+        unknown.setLastModified(0);
+
+        cleanup(1, 0, false);
+
+        assertRemaining("1.1", "1.3");
+        assertTrue(getLog(), getLog().contains("The age of 1.3 is unknown, it is kept"));
+    }
+
+    @Test
+    public void deletesNothingInADryRun() throws Exception {
+        stage("1.1", 1);
+        stage("1.2", 2);
+        stage("1.3", 3);
+
+        cleanup(1, 0, true);
+
+        assertRemaining("1.1", "1.2", "1.3");
+        assertTrue(getLog(), getLog().contains("Would delete 2 of 3 versions"));
+    }
+
+    @Test(expected = PromotionException.class)
+    public void requiresARetentionRule() throws Exception {
+        stage("1.1", 1);
+
+        cleanup(0, 0, false);
+    }
+
+    @Test
+    public void treatsAMalformedLengthAsUnknown() {
+        assertEquals(1024, StagingCleanupNexusOSS.parseLength(" 1024"));
+        assertEquals(0, StagingCleanupNexusOSS.parseLength(null));
+        assertEquals(0, StagingCleanupNexusOSS.parseLength("1024, 1024"));
+    }
+
+    /**
+     * Stages a version whose only file was last modified the given number of days ago.
+     */
+    private File stage(String version, int days) throws Exception {
+        File file = new File(artifactDirectory, version + "/example-" + version + ".jar");
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), version.getBytes("UTF-8"));
+        file.setLastModified(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(days));
+        return file;
+    }
+
+    private void cleanup(int keepVersions, int maxAgeDays, boolean dryRun) throws Exception {
+        new StagingCleanupNexusOSS(new StreamTaskListener(log), repository.toURI().toString(), "", null,
+                "org.example", "example", keepVersions, maxAgeDays, 2, dryRun, false).call();
+    }
+
+    private void assertRemaining(String... versions) {
+        assertEquals(new TreeSet<String>(Arrays.asList(versions)),
+                new TreeSet<String>(Arrays.asList(artifactDirectory.list())));
+    }
+
+    private String getLog() throws Exception {
+        return log.toString("UTF-8");
+    }
+}
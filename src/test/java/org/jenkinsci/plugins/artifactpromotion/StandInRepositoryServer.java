@@ -0,0 +1,426 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Halil-Cem Guersoy and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.artifactpromotion;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.eclipse.aether.artifact.Artifact;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * An embedded stand-in for the Nexus OSS repositories the promotion talks to.
+ * It serves the files of any number of repositories in the default (maven2)
+ * layout out of memory:
+ * <ul>
+ * <li>GET and HEAD of files, with range requests and generated .sha1 and
+ * .md5 checksum files,</li>
+ * <li>GET of a directory returns an HTML index like Nexus does,</li>
+ * <li>PUT stores a file (201),</li>
+ * <li>DELETE of a file or a version directory answers 204, or 404 if there
+ * is nothing to delete, like the REST API used by
+ * {@link DeleteArtifactNexusOSS},</li>
+ * <li>every request answers 401 without the expected credentials.</li>
+ * </ul>
+ * A latency per request and a bandwidth per connection can be configured to
+ * simulate a remote server, failures can be injected to test retries.
+ */
+public final class StandInRepositoryServer implements HttpHandler, Closeable {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final String REPOSITORIES = "/repositories/";
+
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d*)");
+
+    private static final int CHUNK_SIZE = 8 * 1024;
+
+    private final HttpServer server;
+
+    private final ExecutorService executor;
+
+    private final NavigableMap<String, byte[]> files = new ConcurrentSkipListMap<String, byte[]>();
+
+    private final ConcurrentMap<String, AtomicInteger> requests = new ConcurrentHashMap<String, AtomicInteger>();
+
+    private final ConcurrentMap<String, AtomicInteger> failures = new ConcurrentHashMap<String, AtomicInteger>();
+
+    private volatile String authorization;
+
+    private volatile long latency;
+
+    private volatile long bandwidth;
+
+    private volatile boolean ranges = true;
+
+    public StandInRepositoryServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 128);
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext("/", this);
+        server.start();
+    }
+
+    public String getURL() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    /**
+     * @return the URL of a repository, ending with a slash.
+     */
+    public String getRepositoryURL(String repository) {
+        return getURL() + REPOSITORIES + repository + "/";
+    }
+
+    /**
+     * Only accepts requests with these credentials from now on.
+     */
+    public StandInRepositoryServer requireCredentials(String user, String password) {
+        authorization = "Basic " + Base64.getEncoder().encodeToString((user + ":" + password).getBytes(UTF8));
+        return this;
+    }
+
+    /**
+     * @param millis the time every request waits before it is answered.
+     */
+    public StandInRepositoryServer setLatency(long millis) {
+        this.latency = millis;
+        return this;
+    }
+
+    /**
+     * @param bytesPerSecond the bandwidth of every connection, 0 for no limit.
+     */
+    public StandInRepositoryServer setBandwidth(long bytesPerSecond) {
+        this.bandwidth = bytesPerSecond;
+        return this;
+    }
+
+    /**
+     * @param ranges false to ignore range requests, like some proxies do.
+     */
+    public StandInRepositoryServer setRanges(boolean ranges) {
+        this.ranges = ranges;
+        return this;
+    }
+
+    /**
+     * Answers the next requests of a file with 503.
+     *
+     * @param times the number of failing requests.
+     */
+    public void failNext(String repository, String path, int times) {
+        failures.put(REPOSITORIES + repository + "/" + path, new AtomicInteger(times));
+    }
+
+    public void put(String repository, String path, byte[] content) {
+        files.put(REPOSITORIES + repository + "/" + path, content);
+    }
+
+    public void put(String repository, Artifact artifact, byte[] content) {
+        put(repository, RemoteRepositoryAccess.getPath(artifact), content);
+    }
+
+    public void remove(String repository, Artifact artifact) {
+        files.remove(REPOSITORIES + repository + "/" + RemoteRepositoryAccess.getPath(artifact));
+    }
+
+    public byte[] get(String repository, String path) {
+        return files.get(REPOSITORIES + repository + "/" + path);
+    }
+
+    public byte[] get(String repository, Artifact artifact) {
+        return get(repository, RemoteRepositoryAccess.getPath(artifact));
+    }
+
+    public boolean contains(String repository, Artifact artifact) {
+        return get(repository, artifact) != null;
+    }
+
+    /**
+     * @return the number of requests with the method, e.g. GET.
+     */
+    public int getRequestCount(String method) {
+        AtomicInteger count = requests.get(method);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * @return the number of requests by method.
+     */
+    public Map<String, Integer> getRequestCounts() {
+        Map<String, Integer> counts = new TreeMap<String, Integer>();
+        for (Map.Entry<String, AtomicInteger> entry : requests.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().get());
+        }
+        return counts;
+    }
+
+    public void resetRequestCounts() {
+        requests.clear();
+    }
+
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public void handle(HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            count(method);
+            if (latency > 0) {
+                Thread.sleep(latency);
+            }
+            if (authorization != null
+                    && !authorization.equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+                drain(exchange);
+                send(exchange, 401, null);
+                return;
+            }
+            String path = exchange.getRequestURI().getPath();
+            AtomicInteger failure = failures.get(path);
+            if (failure != null && failure.getAndDecrement() > 0) {
+                drain(exchange);
+                send(exchange, 503, null);
+                return;
+            }
+            if ("GET".equals(method) || "HEAD".equals(method)) {
+                handleGet(exchange, path, "HEAD".equals(method));
+            } else if ("PUT".equals(method)) {
+                files.put(path, read(exchange));
+                send(exchange, 201, null);
+            } else if ("DELETE".equals(method)) {
+                send(exchange, delete(path) ? 204 : 404, null);
+            } else {
+                send(exchange, 405, null);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleGet(HttpExchange exchange, String path, boolean head)
+            throws IOException, InterruptedException {
+        if (path.endsWith("/")) {
+            String index = listDirectory(path);
+            if (index == null) {
+                send(exchange, 404, null);
+            } else {
+                exchange.getResponseHeaders().set("Content-Type", "text/html");
+                send(exchange, 200, head ? null : index.getBytes(UTF8));
+            }
+            return;
+        }
+        byte[] content = getFile(path);
+        if (content == null) {
+            send(exchange, 404, null);
+            return;
+        }
+        long first = 0;
+        long last = content.length - 1;
+        int status = 200;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        Matcher matcher = range == null ? null : RANGE.matcher(range);
+        if (ranges && matcher != null && matcher.matches()) {
+            first = Long.parseLong(matcher.group(1));
+            if (matcher.group(2).length() > 0) {
+                last = Math.min(last, Long.parseLong(matcher.group(2)));
+            }
+            if (first > last) {
+                exchange.getResponseHeaders().set("Content-Range", "bytes */" + content.length);
+                send(exchange, 416, null);
+                return;
+            }
+            status = 206;
+            exchange.getResponseHeaders().set("Content-Range",
+                    "bytes " + first + "-" + last + "/" + content.length);
+        }
+        if (ranges) {
+            exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+        }
+        long length = last - first + 1;
+        if (head) {
+            exchange.getResponseHeaders().set("Content-Length", String.valueOf(length));
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(status, length == 0 ? -1 : length);
+        OutputStream out = exchange.getResponseBody();
+        long start = System.currentTimeMillis();
+        for (long offset = first; offset <= last; offset += CHUNK_SIZE) {
+            int size = (int) Math.min(CHUNK_SIZE, last + 1 - offset);
+            out.write(content, (int) offset, size);
+            throttle(start, offset + size - first);
+        }
+        out.close();
+    }
+
+    /**
+     * @return the file, generated checksum files included, or null.
+     */
+    private byte[] getFile(String path) {
+        byte[] content = files.get(path);
+        if (content != null) {
+            return content;
+        }
+        for (String algorithm : new String[] { "sha1", "md5" }) {
+            if (path.endsWith("." + algorithm)) {
+                byte[] file = files.get(path.substring(0, path.length() - algorithm.length() - 1));
+                return file == null ? null : digest(algorithm, file).getBytes(UTF8);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return an HTML index of the directory or null if there is no such directory.
+     */
+    private String listDirectory(String path) {
+        Set<String> children = new TreeSet<String>();
+        for (String file : files.tailMap(path).keySet()) {
+            if (!file.startsWith(path)) {
+                break;
+            }
+            String rest = file.substring(path.length());
+            int slash = rest.indexOf('/');
+            children.add(slash < 0 ? rest : rest.substring(0, slash + 1));
+        }
+        if (children.isEmpty()) {
+            return null;
+        }
+        StringBuilder html = new StringBuilder("<html><body><table>\n");
+        html.append("<tr><td><a href=\"../\">Parent Directory</a></td></tr>\n");
+        for (String child : children) {
+            html.append("<tr><td><a href=\"").append(getURL()).append(path).append(child).append("\">")
+                    .append(child).append("</a></td></tr>\n");
+        }
+        return html.append("</table></body></html>\n").toString();
+    }
+
+    private boolean delete(String path) {
+        if (!path.endsWith("/")) {
+            return files.remove(path) != null;
+        }
+        boolean deleted = false;
+        for (String file : files.tailMap(path).keySet()) {
+            if (!file.startsWith(path)) {
+                break;
+            }
+            deleted |= files.remove(file) != null;
+        }
+        return deleted;
+    }
+
+    private byte[] read(HttpExchange exchange) throws IOException, InterruptedException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        InputStream in = exchange.getRequestBody();
+        byte[] buffer = new byte[CHUNK_SIZE];
+        long start = System.currentTimeMillis();
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            content.write(buffer, 0, read);
+            throttle(start, content.size());
+        }
+        return content.toByteArray();
+    }
+
+    private static void drain(HttpExchange exchange) throws IOException {
+        InputStream in = exchange.getRequestBody();
+        byte[] buffer = new byte[CHUNK_SIZE];
+        while (in.read(buffer) != -1) {
+            // the body is ignored
+        }
+    }
+
+    /**
+     * Waits until the transferred bytes fit into the bandwidth.
+     */
+    private void throttle(long start, long transferred) throws InterruptedException {
+        long limit = bandwidth;
+        if (limit <= 0) {
+            return;
+        }
+        long wait = transferred * 1000 / limit - (System.currentTimeMillis() - start);
+        if (wait > 0) {
+            Thread.sleep(wait);
+        }
+    }
+
+    private void count(String method) {
+        AtomicInteger count = requests.get(method);
+        if (count == null) {
+            AtomicInteger created = new AtomicInteger();
+            count = requests.putIfAbsent(method, created);
+            if (count == null) {
+                count = created;
+            }
+        }
+        count.incrementAndGet();
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(status, body == null || body.length == 0 ? -1 : body.length);
+        if (body != null && body.length > 0) {
+            OutputStream out = exchange.getResponseBody();
+            out.write(body);
+            out.close();
+        }
+    }
+
+    static String digest(String algorithm, byte[] content) {
+        try {
+            return RemoteRepositoryAccess.toHex(MessageDigest.getInstance("sha1".equals(algorithm) ? "SHA-1"
+                    : algorithm.toUpperCase()).digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
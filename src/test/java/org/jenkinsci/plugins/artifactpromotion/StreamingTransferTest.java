@@ -0,0 +1,117 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Halil-Cem Guersoy and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.artifactpromotion;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import hudson.util.StreamTaskListener;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.maven.repository.internal.MavenRepositorySystemUtils;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StreamingTransferTest {
+
+    private static final Artifact ARTIFACT = new DefaultArtifact("org.example", "streamed", "jar", "1.0");
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private StandInRepositoryServer server;
+
+    private DefaultRepositorySystemSession session;
+
+    private RemoteRepository staging;
+
+    private RemoteRepository release;
+
+    private byte[] content;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StandInRepositoryServer();
+        staging = new RemoteRepository.Builder("staging", "default", server.getRepositoryURL("staging")).build();
+        release = new RemoteRepository.Builder("release", "default", server.getRepositoryURL("release")).build();
+        session = MavenRepositorySystemUtils.newSession();
+        content = new byte[100000];
+        new Random(1).nextBytes(content);
+        server.put("staging", ARTIFACT, content);
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void streamsTheArtifactWithItsChecksums() throws Exception {
+        long transferred = newTransfer().transfer(session, staging, release, ARTIFACT);
+
+        assertEquals(content.length, transferred);
+        assertArrayEquals(content, server.get("release", ARTIFACT));
+        String sha1 = RemoteRepositoryAccess.toHex(MessageDigest.getInstance("SHA-1").digest(content));
+        assertEquals(sha1, new String(server.get("release", RemoteRepositoryAccess.getPath(ARTIFACT) + ".sha1"), UTF8));
+    }
+
+    /**
+     * Staging and release share a host here. The downloads of other
+     * transfers hold all but one connection to it, the upload must not wait
+     * for them.
+     */
+    @Test
+    public void uploadsWhileTheDownloadsHoldEveryConnection() throws Exception {
+        int maxPerRoute = Integer.getInteger(PooledHttpClient.class.getName() + ".maxPerRoute", 8);
+        List<CloseableHttpResponse> downloads = new ArrayList<CloseableHttpResponse>();
+        try {
+            for (int i = 0; i < maxPerRoute - 1; i++) {
+                downloads.add(PooledHttpClient.open(new HttpGet(RemoteRepositoryAccess.getURL(staging, ARTIFACT))));
+            }
+            long transferred = newTransfer().transfer(session, staging, release, ARTIFACT);
+
+            assertEquals(content.length, transferred);
+            assertArrayEquals(content, server.get("release", ARTIFACT));
+        } finally {
+            for (CloseableHttpResponse download : downloads) {
+                download.close();
+            }
+        }
+    }
+
+    private StreamingTransfer newTransfer() {
+        return new StreamingTransfer(StreamTaskListener.fromStdout(), true);
+    }
+
+}
@@ -0,0 +1,170 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Halil-Cem Guersoy and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.artifactpromotion;
+
+import hudson.Util;
+import hudson.model.TaskListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import jenkins.benchmark.jmh.JmhBenchmark;
+
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.deployment.DeployResult;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures resolving an artifact from the staging repository and deploying
+ * it with the POM check to the release repository, over a
+ * <code>file://</code> repository and over HTTP to a
+ * {@link StandInRepositoryServer}, for several artifact sizes.
+ */
+@JmhBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransferBenchmark {
+
+    private static final Artifact JAR = new DefaultArtifact("org.example.benchmark", "artifact", "jar", "1.0");
+
+    private static final Artifact POM = new DefaultArtifact("org.example.benchmark", "artifact", "pom", "1.0");
+
+    @Param({ "1024", "1048576", "33554432" })
+    public int size;
+
+    @Param({ "file", "http" })
+    public String transport;
+
+    private StandInRepositoryServer server;
+
+    private File directory;
+
+    private File localRepository;
+
+    private AetherInteraction aether;
+
+    private RepositorySystem system;
+
+    private RepositorySystemSession session;
+
+    private RemoteRepository staging;
+
+    private RemoteRepository releases;
+
+    private Artifact jar;
+
+    private Artifact pom;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        byte[] content = new byte[size];
+        new Random(42).nextBytes(content);
+        byte[] pomContent = PromotionLoadDriver.pom(JAR).getBytes("UTF-8");
+
+        directory = Files.createTempDirectory("transfer-benchmark").toFile();
+        String stagingURL;
+        String releasesURL;
+        if ("http".equals(transport)) {
+            server = new StandInRepositoryServer();
+            server.put("staging", JAR, content);
+            server.put("staging", POM, pomContent);
+            stagingURL = server.getRepositoryURL("staging");
+            releasesURL = server.getRepositoryURL("releases");
+        } else {
+            File stagingDirectory = new File(directory, "staging");
+            write(new File(stagingDirectory, RemoteRepositoryAccess.getPath(JAR)), content);
+            write(new File(stagingDirectory, RemoteRepositoryAccess.getPath(POM)), pomContent);
+            stagingURL = stagingDirectory.toURI().toString();
+            releasesURL = new File(directory, "releases").toURI().toString();
+        }
+        jar = JAR.setFile(write(new File(directory, "artifact.jar"), content));
+        pom = POM.setFile(write(new File(directory, "artifact.pom"), pomContent));
+
+        localRepository = new File(directory, "local-repo");
+        aether = new AetherInteraction(TaskListener.NULL);
+        system = aether.getNewRepositorySystem();
+        session = aether.getRepositorySystemSession(system, localRepository.getPath());
+        staging = new RemoteRepository.Builder("staging", "default", stagingURL).build();
+        releases = new RemoteRepository.Builder("releases", "default", releasesURL).build();
+    }
+
+    /**
+     * Empties the local repository, so every resolve downloads the artifact.
+     */
+    @Setup(Level.Invocation)
+    public void emptyLocalRepository() throws IOException {
+        Util.deleteRecursive(localRepository);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (server != null) {
+            server.close();
+        }
+        Util.deleteRecursive(directory);
+    }
+
+    @Benchmark
+    public Artifact getArtifact() throws Exception {
+        return aether.getArtifact(session, system, staging, JAR.getGroupId(), JAR.getArtifactId(), null,
+                JAR.getExtension(), JAR.getVersion());
+    }
+
+    /**
+     * Deploys the same version again and again, so after the first deployment
+     * the POM check finds the POM, like a promotion of attached artifacts.
+     */
+    @Benchmark
+    public DeployResult deployArtifact() throws Exception {
+        return aether.deployArtifact(session, system, releases, jar, pom);
+    }
+
+    private static File write(File file, byte[] content) throws IOException {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content);
+        return file;
+    }
+}
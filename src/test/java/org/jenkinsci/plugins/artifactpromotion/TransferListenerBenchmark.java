@@ -0,0 +1,130 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Halil-Cem Guersoy and all contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.artifactpromotion;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import jenkins.benchmark.jmh.JmhBenchmark;
+
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.transfer.TransferEvent;
+import org.eclipse.aether.transfer.TransferResource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the overhead of the {@link JenkinsConsoleTransferListener}
+ * callbacks: a single progress callback of a running transfer, and all
+ * callbacks of a transfer which reports its progress every 8 KB. Run it
+ * with <code>-Dbenchmark.include=TransferListenerBenchmark</code>; the JMH
+ * option <code>-prof gc</code> shows that the progress callbacks don't
+ * allocate.
+ */
+@JmhBenchmark
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransferListenerBenchmark {
+
+    private static final int CHUNK = 8 * 1024;
+
+    @Param({ "1048576", "33554432" })
+    public int size;
+
+    private JenkinsConsoleTransferListener listener;
+
+    private TransferEvent initiated;
+
+    private TransferEvent[] progressed;
+
+    private TransferEvent succeeded;
+
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        PrintStream discard = new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        });
+        listener = new JenkinsConsoleTransferListener(discard, discard);
+
+        DefaultRepositorySystemSession session = new DefaultRepositorySystemSession();
+        TransferResource resource = new TransferResource("http://localhost/repositories/staging/",
+                "org/example/artifact/1.0/artifact-1.0.jar", null, null);
+        resource.setContentLength(size);
+        TransferEvent.Builder builder = new TransferEvent.Builder(session, resource)
+                .setRequestType(TransferEvent.RequestType.GET);
+        initiated = builder.copy().setType(TransferEvent.EventType.INITIATED).build();
+        progressed = new TransferEvent[size / CHUNK];
+        for (int i = 0; i < progressed.length; i++) {
+            progressed[i] = builder.copy().setType(TransferEvent.EventType.PROGRESSED)
+                    .setTransferredBytes((long) (i + 1) * CHUNK).build();
+        }
+        succeeded = builder.copy().setType(TransferEvent.EventType.SUCCEEDED).setTransferredBytes(size).build();
+
+        listener.transferInitiated(initiated);
+    }
+
+    /**
+     * A progress callback of a running transfer, mostly skipped by the rate limit.
+     */
+    @Benchmark
+    public void progressed() {
+        listener.transferProgressed(progressed[next]);
+        next = (next + 1) % progressed.length;
+    }
+
+    /**
+     * All callbacks of a transfer, from the start to the success.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void transfer() {
+        listener.transferInitiated(initiated);
+        for (TransferEvent event : progressed) {
+            listener.transferProgressed(event);
+        }
+        listener.transferSucceeded(succeeded);
+    }
+}